@@ -0,0 +1,328 @@
+package com.exemplo.bench;
+
+import com.exemplo.consumer.ImageConsumer;
+import com.exemplo.consumer.ImageMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Delivery;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Verifica as garantias de ack do {@link ImageConsumer} contra o {@link InMemoryBroker}, com um
+ * modelo falso e falhas injetadas: lote que falha na inferência, mensagem que não decodifica,
+ * publish do resultado que falha e nack do broker no confirm do resultado. Em cada cenário, toda
+ * entrega deve receber exatamente um ack ou nack, nenhuma entrada pode receber ack antes do confirm
+ * do seu resultado e cada mensagem deve terminar como esperado (a do resultado recusado volta à fila
+ * e é confirmada na segunda entrega). Sai com status 1 se algo falhar; o build do módulo roda esta
+ * verificação na fase {@code test}.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.exemplo.bench.AckInvariantCheck
+ * </pre>
+ *
+ * <p>A configuração do consumidor vem das variáveis de ambiente, como nos serviços; o build usa
+ * lotes de 4 para que as falhas caiam no meio de lotes com outras mensagens.
+ */
+public final class AckInvariantCheck {
+
+    private static final String TYPE = "checagem";
+    private static final String QUEUE = TYPE + "_queue";
+    private static final String RESULTS_EXCHANGE = System.getenv().getOrDefault("RESULTS_EXCHANGE", "image_results_exchange");
+    private static final int MESSAGES = 40;
+    private static final long TIMEOUT_MS = 30_000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Falha injetada em uma mensagem; o prefixo do id identifica a mensagem no broker e no modelo. */
+    enum Fault {
+        NONE("msg-"),
+        FAILED_BATCH("lote-falho-"),
+        UNDECODABLE("invalida-"),
+        FAILED_PUBLISH("publish-falho-"),
+        NACKED_RESULT("resultado-recusado-");
+
+        final String prefix;
+
+        Fault(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    private AckInvariantCheck() {}
+
+    public static void main(String[] args) throws Exception {
+        Map<String, IntFunction<Fault>> scenarios = new LinkedHashMap<>();
+        scenarios.put("lote-com-falha", i -> i % 6 == 2 ? Fault.FAILED_BATCH : Fault.NONE);
+        scenarios.put("mensagem-invalida", i -> i % 5 == 1 ? Fault.UNDECODABLE : Fault.NONE);
+        scenarios.put("publish-falho", i -> i % 5 == 3 ? Fault.FAILED_PUBLISH : Fault.NONE);
+        scenarios.put("nack-do-resultado", i -> i % 4 == 0 ? Fault.NACKED_RESULT : Fault.NONE);
+        scenarios.put("todas", i -> {
+            switch (i % 10) {
+                case 1: return Fault.UNDECODABLE;
+                case 3: return Fault.FAILED_PUBLISH;
+                case 5: return Fault.NACKED_RESULT;
+                case 8: return Fault.FAILED_BATCH;
+                default: return Fault.NONE;
+            }
+        });
+
+        int failed = 0;
+        for (Map.Entry<String, IntFunction<Fault>> scenario : scenarios.entrySet()) {
+            List<String> violations = run(scenario.getValue());
+            if (violations.isEmpty()) {
+                System.out.println("OK    " + scenario.getKey());
+            } else {
+                failed++;
+                System.out.println("FALHA " + scenario.getKey());
+                violations.forEach(v -> System.out.println("      " + v));
+            }
+        }
+        System.out.printf("%d de %d cenário(s) com violações%n", failed, scenarios.size());
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static List<String> run(IntFunction<Fault> faults) throws Exception {
+        InMemoryBroker broker = new InMemoryBroker();
+        Recorder recorder = new Recorder();
+        broker.trace(recorder);
+        FakeConsumer consumer = new FakeConsumer(recorder);
+        try {
+            consumer.connectRabbitMQ(broker.connectionFactory());
+            try (Connection connection = broker.connectionFactory().newConnection();
+                 Channel channel = connection.createChannel()) {
+                AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().contentType("application/json").build();
+                for (int i = 0; i < MESSAGES; i++) {
+                    Fault fault = faults.apply(i);
+                    String id = fault.prefix + i;
+                    recorder.expect(id, fault);
+                    byte[] body = fault == Fault.UNDECODABLE
+                            ? ("{\"id\": \"" + id + "\", não é JSON").getBytes(StandardCharsets.UTF_8)
+                            : MAPPER.writeValueAsBytes(new ImageMessage(id, TYPE, id + ".jpg", System.currentTimeMillis(),
+                                    id.getBytes(StandardCharsets.UTF_8), null, -1));
+                    channel.basicPublish("", QUEUE, props, body);
+                }
+            }
+            consumer.startConsuming();
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (!recorder.finished() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            // dá tempo a um ack ou nack duplicado atrasado de aparecer
+            Thread.sleep(200);
+            return recorder.verify(broker.readyMessages());
+        } finally {
+            consumer.close();
+        }
+    }
+
+    /** Consumidor com modelo falso: o "resultado" é o próprio id, e lotes com id de falha lançam. */
+    private static final class FakeConsumer extends ImageConsumer<String> {
+        private final Recorder recorder;
+
+        FakeConsumer(Recorder recorder) {
+            super("checagem", TYPE, 8, 8);
+            this.recorder = recorder;
+        }
+
+        @Override
+        protected Replica<String> replica(int index) {
+            return new Replica<String>() {
+                @Override
+                public List<String> infer(List<byte[]> pixels) {
+                    List<String> ids = new ArrayList<>(pixels.size());
+                    for (byte[] p : pixels) {
+                        ids.add(new String(p, StandardCharsets.UTF_8));
+                    }
+                    if (ids.stream().anyMatch(id -> id.startsWith(Fault.FAILED_BATCH.prefix))) {
+                        recorder.batchFailed(ids);
+                        throw new IllegalStateException("falha de inferência injetada no lote " + ids);
+                    }
+                    return ids;
+                }
+
+                @Override
+                public void warmUp(List<ByteBuffer> images) {}
+            };
+        }
+
+        @Override
+        protected byte[] preprocess(ByteBuffer image) {
+            byte[] pixels = new byte[image.remaining()];
+            image.duplicate().get(pixels);
+            return pixels;
+        }
+
+        @Override
+        protected boolean cacheable(String result) {
+            return false;
+        }
+
+        @Override
+        protected String label(String result) {
+            return result;
+        }
+
+        @Override
+        protected double confidence(String result) {
+            return 1.0;
+        }
+
+        @Override
+        protected String describe(String result) {
+            return result;
+        }
+    }
+
+    /**
+     * Registra, na ordem em que o broker os vê, entregas, acks, nacks e confirms; injeta as falhas
+     * de publish e os nacks de confirm. Uma entrega é "canal:tag"; o id da mensagem liga a entrega
+     * pendente ao resultado publicado para ela.
+     */
+    private static final class Recorder implements InMemoryBroker.Tracer {
+        private final Map<String, Fault> expected = new HashMap<>();
+        private final Set<String> injected = new HashSet<>();
+        private final Set<String> inFailedBatch = new HashSet<>();
+        private final Map<String, String> deliveryIds = new HashMap<>();
+        private final Map<String, String> openDelivery = new HashMap<>();
+        private final Map<String, Integer> settlements = new HashMap<>();
+        private final Map<String, String> pendingConfirms = new HashMap<>();
+        private final Set<String> confirmedDeliveries = new HashSet<>();
+        private final Map<String, List<String>> outcomes = new HashMap<>();
+        private final List<String> violations = new ArrayList<>();
+        private int undecodableNacks;
+        private int terminal;
+
+        synchronized void expect(String id, Fault fault) {
+            expected.put(id, fault);
+        }
+
+        synchronized void batchFailed(List<String> ids) {
+            inFailedBatch.addAll(ids);
+        }
+
+        /** Toda mensagem publicada já recebeu o ack ou o nack final. */
+        synchronized boolean finished() {
+            return terminal >= expected.size() && openDelivery.isEmpty();
+        }
+
+        @Override
+        public synchronized void delivered(int channel, long tag, Delivery delivery) {
+            String key = channel + ":" + tag;
+            String id = messageId(delivery.getBody());
+            deliveryIds.put(key, id);
+            if (id != null && openDelivery.put(id, key) != null) {
+                violations.add("mensagem " + id + " entregue de novo antes do ack ou nack da entrega anterior");
+            }
+        }
+
+        @Override
+        public synchronized void settled(int channel, long tag, boolean ack, boolean requeue) {
+            String key = channel + ":" + tag;
+            String id = deliveryIds.get(key);
+            int count = settlements.merge(key, 1, Integer::sum);
+            if (count > 1) {
+                violations.add("entrega " + key + " (" + id + ") resolvida " + count + " vezes");
+            }
+            if (ack && !confirmedDeliveries.contains(key)) {
+                violations.add("ack da entrega " + key + " (" + id + ") antes do confirm do seu resultado");
+            }
+            if (!requeue) terminal++;
+            if (id == null) {
+                if (ack) violations.add("ack da entrega " + key + ", que não decodifica");
+                else undecodableNacks++;
+                return;
+            }
+            openDelivery.remove(id, key);
+            outcomes.computeIfAbsent(id, i -> new ArrayList<>()).add(ack ? "ack" : requeue ? "nack-requeue" : "nack");
+        }
+
+        @Override
+        public synchronized void unknownTag(int channel, long tag) {
+            violations.add("ack ou nack do tag " + channel + ":" + tag + ", que não está pendente");
+        }
+
+        @Override
+        public synchronized boolean publishing(int channel, long seq, String exchange, String routingKey, byte[] body)
+                throws IOException {
+            if (!RESULTS_EXCHANGE.equals(exchange)) return true;
+            String id = messageId(body);
+            Fault fault = expected.getOrDefault(id, Fault.NONE);
+            if (fault == Fault.FAILED_PUBLISH && injected.add(id)) {
+                throw new IOException("falha de publish injetada para " + id);
+            }
+            String key = openDelivery.get(id);
+            if (key == null) {
+                violations.add("resultado de " + id + " publicado sem entrega pendente");
+            } else {
+                pendingConfirms.put(channel + ":" + seq, key);
+            }
+            return !(fault == Fault.NACKED_RESULT && injected.add(id));
+        }
+
+        @Override
+        public synchronized void confirming(int channel, long seq, boolean ack) {
+            String key = pendingConfirms.remove(channel + ":" + seq);
+            if (key != null && ack) confirmedDeliveries.add(key);
+        }
+
+        /** Violações registradas mais as do estado final: entregas sem desfecho e desfechos errados. */
+        synchronized List<String> verify(long ready) {
+            List<String> result = new ArrayList<>(violations);
+            if (ready != 0) result.add(ready + " mensagem(ns) ainda na fila");
+            for (String key : deliveryIds.keySet()) {
+                if (!settlements.containsKey(key)) {
+                    result.add("entrega " + key + " (" + deliveryIds.get(key) + ") sem ack nem nack");
+                }
+            }
+            int undecodable = 0;
+            for (Map.Entry<String, Fault> entry : expected.entrySet()) {
+                String id = entry.getKey();
+                Fault fault = entry.getValue();
+                if (fault == Fault.UNDECODABLE) {
+                    undecodable++;
+                    continue;
+                }
+                List<String> got = outcomes.getOrDefault(id, List.of());
+                List<String> want;
+                if (inFailedBatch.contains(id)) {
+                    // caiu em um lote que falhou: descartada, talvez depois de voltar à fila uma vez
+                    want = got.size() == 2 && fault == Fault.NACKED_RESULT
+                            ? List.of("nack-requeue", "nack") : List.of("nack");
+                } else if (fault == Fault.FAILED_PUBLISH) {
+                    want = List.of("nack");
+                } else if (fault == Fault.NACKED_RESULT) {
+                    want = List.of("nack-requeue", "ack");
+                } else {
+                    want = List.of("ack");
+                }
+                if (!got.equals(want)) {
+                    result.add("mensagem " + id + ": esperado " + want + ", obtido " + got);
+                }
+            }
+            if (undecodableNacks != undecodable) {
+                result.add(undecodable + " mensagem(ns) inválida(s), mas " + undecodableNacks + " nack(s) de entregas que não decodificam");
+            }
+            return result;
+        }
+
+        private static String messageId(byte[] body) {
+            try {
+                return MAPPER.readTree(body).path("id").asText(null);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
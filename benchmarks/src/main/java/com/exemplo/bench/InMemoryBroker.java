@@ -0,0 +1,597 @@
+package com.exemplo.bench;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.CancelCallback;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmCallback;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.impl.AMQImpl;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Broker AMQP 0-9-1 em memória para o harness de ponta a ponta. Implementa, atrás das interfaces
+ * {@link Connection} e {@link Channel} do amqp-client, só o que os três serviços usam: exchanges
+ * topic, filas nomeadas e geradas pelo servidor, bindings com {@code *} e {@code #},
+ * {@code basic.qos} por consumidor ou por channel, {@code x-priority}, ack e nack (múltiplos, com
+ * requeue), publisher confirms e {@code queue.declare} passivo. Não há rede nem codificação de
+ * frames; as entregas e os confirms de cada channel saem em ordem, em uma thread do channel, como
+ * no cliente real. Os demais métodos lançam {@link UnsupportedOperationException}.
+ *
+ * <p>Um {@link Tracer} opcional acompanha entregas, acks e confirms e injeta falhas no publish e
+ * nacks nos confirms, para as verificações de {@link AckInvariantCheck}.
+ */
+public final class InMemoryBroker {
+
+    private final Object lock = new Object();
+    private final Set<String> exchanges = new HashSet<>();
+    private final Map<String, List<Binding>> bindings = new HashMap<>();
+    private final Map<String, Queue> queues = new LinkedHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    final LongAdder published = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder unroutable = new LongAdder();
+    private volatile Tracer tracer = new Tracer() {};
+
+    public InMemoryBroker() {
+        exchanges.add("");
+    }
+
+    /**
+     * Observa o broker e injeta falhas. Os métodos rodam com o lock do broker, exceto
+     * {@link #confirming}, que roda na thread do channel, logo antes dos listeners de confirm.
+     */
+    public interface Tracer {
+        /** Entrega com ack manual ao consumidor. */
+        default void delivered(int channel, long tag, Delivery delivery) {}
+
+        /** Ack ou nack de uma entrega; no ack/nack múltiplo, uma chamada por tag resolvido. */
+        default void settled(int channel, long tag, boolean ack, boolean requeue) {}
+
+        /** basicAck/basicNack/basicReject de um tag que não está pendente (já resolvido ou nunca entregue). */
+        default void unknownTag(int channel, long tag) {}
+
+        /**
+         * Publish prestes a ser roteado, com o seq do confirm (0 sem confirms). Lançar faz o
+         * basicPublish falhar sem consumir o seq; devolver false descarta a mensagem e o confirm sai
+         * como nack.
+         */
+        default boolean publishing(int channel, long seq, String exchange, String routingKey, byte[] body) throws IOException {
+            return true;
+        }
+
+        /** Confirm (ack ou nack) prestes a ser entregue aos listeners. */
+        default void confirming(int channel, long seq, boolean ack) {}
+    }
+
+    public void trace(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /** Fábrica cujo {@code newConnection()} devolve uma conexão com este broker. */
+    public ConnectionFactory connectionFactory() {
+        ConnectionFactory factory = new ConnectionFactory() {
+            @Override
+            public Connection newConnection() {
+                return newConnectionProxy();
+            }
+        };
+        factory.setHost("broker-em-memoria");
+        return factory;
+    }
+
+    /** Mensagens prontas (ainda não entregues) somando todas as filas. */
+    public long readyMessages() {
+        synchronized (lock) {
+            long total = 0;
+            for (Queue queue : queues.values()) {
+                total += queue.ready.size();
+            }
+            return total;
+        }
+    }
+
+    private static final class Message {
+        final String exchange;
+        final String routingKey;
+        final AMQP.BasicProperties props;
+        final byte[] body;
+        final boolean redelivered;
+
+        Message(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body, boolean redelivered) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.props = props;
+            this.body = body;
+            this.redelivered = redelivered;
+        }
+
+        Message redelivered() {
+            return new Message(exchange, routingKey, props, body, true);
+        }
+    }
+
+    private static final class Binding {
+        final String queue;
+        final String[] pattern;
+
+        Binding(String queue, String key) {
+            this.queue = queue;
+            this.pattern = key.split("\\.", -1);
+        }
+
+        boolean matches(String[] words) {
+            return matches(words, 0, 0);
+        }
+
+        private boolean matches(String[] words, int w, int p) {
+            if (p == pattern.length) return w == words.length;
+            if (pattern[p].equals("#")) {
+                for (int skip = w; skip <= words.length; skip++) {
+                    if (matches(words, skip, p + 1)) return true;
+                }
+                return false;
+            }
+            if (w == words.length) return false;
+            return (pattern[p].equals("*") || pattern[p].equals(words[w])) && matches(words, w + 1, p + 1);
+        }
+    }
+
+    private static final class Queue {
+        final String name;
+        final boolean exclusive;
+        final Deque<Message> ready = new ArrayDeque<>();
+        final List<Subscription> consumers = new ArrayList<>();
+        int next;
+
+        Queue(String name, boolean exclusive) {
+            this.name = name;
+            this.exclusive = exclusive;
+        }
+    }
+
+    private static final class Subscription {
+        final ChannelState channel;
+        final String tag;
+        final Queue queue;
+        final boolean autoAck;
+        final int priority;
+        final int prefetch;
+        final DeliverCallback callback;
+        int unacked;
+
+        Subscription(ChannelState channel, String tag, Queue queue, boolean autoAck, int priority, int prefetch,
+                     DeliverCallback callback) {
+            this.channel = channel;
+            this.tag = tag;
+            this.queue = queue;
+            this.autoAck = autoAck;
+            this.priority = priority;
+            this.prefetch = prefetch;
+            this.callback = callback;
+        }
+
+        boolean hasCapacity() {
+            if (!channel.open) return false;
+            if (autoAck) return true;
+            if (prefetch > 0 && unacked >= prefetch) return false;
+            return channel.globalPrefetch <= 0 || channel.unacked.size() < channel.globalPrefetch;
+        }
+    }
+
+    private static final class Unacked {
+        final Subscription subscription;
+        final Message message;
+
+        Unacked(Subscription subscription, Message message) {
+            this.subscription = subscription;
+            this.message = message;
+        }
+    }
+
+    /** Estado de um channel, guardado pelo lock do broker; callbacks só na thread do channel. */
+    private final class ChannelState {
+        final int number;
+        final ExecutorService dispatcher;
+        final TreeMap<Long, Unacked> unacked = new TreeMap<>();
+        final List<Subscription> subscriptions = new ArrayList<>();
+        final List<ConfirmCallback[]> confirmListeners = new ArrayList<>();
+        volatile boolean open = true;
+        long nextTag = 1;
+        long nextSeq = 1;
+        boolean confirms;
+        int consumerPrefetch;
+        int globalPrefetch;
+
+        ChannelState(int number) {
+            this.number = number;
+            this.dispatcher = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "amqp-canal-" + number);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private Connection newConnectionProxy() {
+        List<Channel> channels = new ArrayList<>();
+        boolean[] open = {true};
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "createChannel": {
+                    Channel channel = newChannelProxy(proxy);
+                    synchronized (channels) {
+                        channels.add(channel);
+                    }
+                    return channel;
+                }
+                case "isOpen":
+                    return open[0];
+                case "close":
+                case "abort":
+                    open[0] = false;
+                    synchronized (channels) {
+                        for (Channel channel : channels) {
+                            if (channel.isOpen()) channel.close();
+                        }
+                    }
+                    return null;
+                case "addBlockedListener":
+                case "addShutdownListener":
+                    // o broker em memória nunca bloqueia publicadores nem cai
+                    return null;
+                default:
+                    return objectMethod(proxy, method, args, "conexão em memória");
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private Channel newChannelProxy(Object connection) {
+        ChannelState state = new ChannelState(ids.incrementAndGet());
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            switch (name) {
+                case "exchangeDeclare":
+                    synchronized (lock) {
+                        exchanges.add((String) args[0]);
+                    }
+                    return null;
+                case "queueDeclare":
+                    return args == null || args.length == 0
+                            ? declareQueue("amq.gen-" + ids.incrementAndGet(), true)
+                            : declareQueue((String) args[0], (Boolean) args[2]);
+                case "queueDeclarePassive":
+                    return declareOk(existingQueue((String) args[0]));
+                case "queueBind":
+                    bind((String) args[0], (String) args[1], (String) args[2]);
+                    return null;
+                case "messageCount":
+                    synchronized (lock) {
+                        return (long) existingQueue((String) args[0]).ready.size();
+                    }
+                case "consumerCount":
+                    synchronized (lock) {
+                        return (long) existingQueue((String) args[0]).consumers.size();
+                    }
+                case "basicQos":
+                    qos(state, args);
+                    return null;
+                case "basicConsume":
+                    return consume(state, args);
+                case "basicPublish":
+                    publish(state, args);
+                    return null;
+                case "basicAck":
+                    settle(state, (Long) args[0], (Boolean) args[1], true, false);
+                    return null;
+                case "basicNack":
+                    settle(state, (Long) args[0], (Boolean) args[1], false, (Boolean) args[2]);
+                    return null;
+                case "basicReject":
+                    settle(state, (Long) args[0], false, false, (Boolean) args[1]);
+                    return null;
+                case "confirmSelect":
+                    synchronized (lock) {
+                        state.confirms = true;
+                    }
+                    return null;
+                case "addConfirmListener":
+                    synchronized (lock) {
+                        state.confirmListeners.add(new ConfirmCallback[]{(ConfirmCallback) args[0], (ConfirmCallback) args[1]});
+                    }
+                    return null;
+                case "getNextPublishSeqNo":
+                    synchronized (lock) {
+                        return state.confirms ? state.nextSeq : 0L;
+                    }
+                case "isOpen":
+                    return state.open;
+                case "close":
+                case "abort":
+                    closeChannel(state);
+                    return null;
+                case "getChannelNumber":
+                    return state.number;
+                case "getConnection":
+                    return connection;
+                case "addShutdownListener":
+                    return null;
+                default:
+                    return objectMethod(proxy, method, args, "channel " + state.number);
+            }
+        };
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class}, handler);
+    }
+
+    private static Object objectMethod(Object proxy, Method method, Object[] args, String description) {
+        switch (method.getName()) {
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return description;
+            default:
+                throw new UnsupportedOperationException(method.getName() + " não é suportado pelo broker em memória");
+        }
+    }
+
+    private AMQP.Queue.DeclareOk declareQueue(String name, boolean exclusive) {
+        synchronized (lock) {
+            Queue queue = queues.computeIfAbsent(name, n -> new Queue(n, exclusive));
+            return declareOk(queue);
+        }
+    }
+
+    private AMQP.Queue.DeclareOk declareOk(Queue queue) {
+        synchronized (lock) {
+            return new AMQImpl.Queue.DeclareOk(queue.name, queue.ready.size(), queue.consumers.size());
+        }
+    }
+
+    private Queue existingQueue(String name) throws IOException {
+        synchronized (lock) {
+            Queue queue = queues.get(name);
+            if (queue == null) {
+                throw new IOException("NOT_FOUND - no queue '" + name + "'");
+            }
+            return queue;
+        }
+    }
+
+    private void bind(String queue, String exchange, String key) throws IOException {
+        synchronized (lock) {
+            existingQueue(queue);
+            if (!exchanges.contains(exchange)) {
+                throw new IOException("NOT_FOUND - no exchange '" + exchange + "'");
+            }
+            List<Binding> list = bindings.computeIfAbsent(exchange, e -> new ArrayList<>());
+            for (Binding binding : list) {
+                if (binding.queue.equals(queue) && String.join(".", binding.pattern).equals(key)) return;
+            }
+            list.add(new Binding(queue, key));
+        }
+    }
+
+    /** basicQos(prefetch[, global]) ou basicQos(prefetchSize, prefetch, global). */
+    private void qos(ChannelState state, Object[] args) {
+        int prefetch = (Integer) args[args.length == 3 ? 1 : 0];
+        boolean global = args.length > 1 && (Boolean) args[args.length - 1];
+        synchronized (lock) {
+            if (global) {
+                // como no RabbitMQ, o limite do channel vale na hora; o por consumidor, só para os próximos
+                state.globalPrefetch = prefetch;
+                for (Subscription subscription : state.subscriptions) {
+                    dispatch(subscription.queue);
+                }
+            } else {
+                state.consumerPrefetch = prefetch;
+            }
+        }
+    }
+
+    /** As sobrecargas usadas: (fila, autoAck, [args], DeliverCallback, CancelCallback). */
+    @SuppressWarnings("unchecked")
+    private String consume(ChannelState state, Object[] args) throws IOException {
+        String queueName = (String) args[0];
+        boolean autoAck = (Boolean) args[1];
+        Map<String, Object> arguments = null;
+        DeliverCallback callback = null;
+        for (Object arg : args) {
+            if (arg instanceof Map) arguments = (Map<String, Object>) arg;
+            if (arg instanceof DeliverCallback) callback = (DeliverCallback) arg;
+            if (arg instanceof com.rabbitmq.client.Consumer) {
+                throw new UnsupportedOperationException("basicConsume com Consumer não é suportado pelo broker em memória");
+            }
+        }
+        Object priority = arguments == null ? null : arguments.get("x-priority");
+        synchronized (lock) {
+            Queue queue = existingQueue(queueName);
+            String tag = "amq.ctag-" + ids.incrementAndGet();
+            Subscription subscription = new Subscription(state, tag, queue, autoAck,
+                    priority instanceof Number ? ((Number) priority).intValue() : 0, state.consumerPrefetch, callback);
+            queue.consumers.add(subscription);
+            state.subscriptions.add(subscription);
+            dispatch(queue);
+            return tag;
+        }
+    }
+
+    /** As sobrecargas usadas: (exchange, chave, [mandatory, [immediate]], props, corpo). */
+    private void publish(ChannelState state, Object[] args) throws IOException {
+        String exchange = (String) args[0];
+        String routingKey = (String) args[1];
+        AMQP.BasicProperties props = (AMQP.BasicProperties) args[args.length - 2];
+        // o publicador pode reaproveitar o array (payloads pré-carregados), então o broker copia
+        byte[] body = ((byte[]) args[args.length - 1]).clone();
+        Message message = new Message(exchange, routingKey, props, body, false);
+        synchronized (lock) {
+            if (!state.open) throw new IOException("channel " + state.number + " fechado");
+            boolean accepted = tracer.publishing(state.number, state.confirms ? state.nextSeq : 0, exchange, routingKey, body);
+            published.increment();
+            Collection<Queue> targets = accepted ? route(exchange, routingKey) : List.of();
+            if (accepted && targets.isEmpty()) unroutable.increment();
+            for (Queue queue : targets) {
+                queue.ready.add(message);
+                dispatch(queue);
+            }
+            if (state.confirms) {
+                long seq = state.nextSeq++;
+                List<ConfirmCallback[]> listeners = new ArrayList<>(state.confirmListeners);
+                Tracer confirmTracer = tracer;
+                state.dispatcher.execute(() -> {
+                    confirmTracer.confirming(state.number, seq, accepted);
+                    for (ConfirmCallback[] listener : listeners) {
+                        try {
+                            listener[accepted ? 0 : 1].handle(seq, false);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    private Collection<Queue> route(String exchange, String routingKey) throws IOException {
+        if (!exchanges.contains(exchange)) {
+            throw new IOException("NOT_FOUND - no exchange '" + exchange + "'");
+        }
+        if (exchange.isEmpty()) {
+            Queue queue = queues.get(routingKey);
+            return queue == null ? List.of() : List.of(queue);
+        }
+        String[] words = routingKey.split("\\.", -1);
+        Map<String, Queue> targets = new LinkedHashMap<>();
+        for (Binding binding : bindings.getOrDefault(exchange, List.of())) {
+            if (binding.matches(words)) {
+                Queue queue = queues.get(binding.queue);
+                if (queue != null) targets.put(queue.name, queue);
+            }
+        }
+        return targets.values();
+    }
+
+    /**
+     * Entrega o que couber: a cada mensagem, o consumidor de maior {@code x-priority} com espaço no
+     * prefetch, em rodízio entre os de mesma prioridade. Chamado com o lock.
+     */
+    private void dispatch(Queue queue) {
+        while (!queue.ready.isEmpty()) {
+            Subscription chosen = null;
+            int chosenIndex = -1;
+            int size = queue.consumers.size();
+            for (int i = 0; i < size; i++) {
+                int index = (queue.next + i) % size;
+                Subscription candidate = queue.consumers.get(index);
+                if (candidate.hasCapacity() && (chosen == null || candidate.priority > chosen.priority)) {
+                    chosen = candidate;
+                    chosenIndex = index;
+                }
+            }
+            if (chosen == null) return;
+            queue.next = chosenIndex + 1;
+            Message message = queue.ready.poll();
+            ChannelState channel = chosen.channel;
+            long tag = channel.nextTag++;
+            delivered.increment();
+            Delivery delivery = new Delivery(new Envelope(tag, message.redelivered, message.exchange, message.routingKey),
+                    message.props, message.body);
+            if (!chosen.autoAck) {
+                channel.unacked.put(tag, new Unacked(chosen, message));
+                chosen.unacked++;
+                tracer.delivered(channel.number, tag, delivery);
+            }
+            Subscription target = chosen;
+            channel.dispatcher.execute(() -> {
+                try {
+                    target.callback.handle(target.tag, delivery);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    private void settle(ChannelState state, long tag, boolean multiple, boolean ack, boolean requeue) throws IOException {
+        synchronized (lock) {
+            if (!state.unacked.containsKey(tag)) {
+                tracer.unknownTag(state.number, tag);
+                // o RabbitMQ fecha o channel com PRECONDITION_FAILED; aqui o erro sobe para o chamador
+                throw new IOException("PRECONDITION_FAILED - unknown delivery tag " + tag + " no channel " + state.number);
+            }
+            Map<Long, Unacked> settled = multiple ? state.unacked.headMap(tag, true) : Map.of(tag, state.unacked.get(tag));
+            Set<Queue> touched = new HashSet<>();
+            List<Unacked> requeued = new ArrayList<>();
+            for (Map.Entry<Long, Unacked> entry : settled.entrySet()) {
+                Unacked unacked = entry.getValue();
+                tracer.settled(state.number, entry.getKey(), ack, requeue);
+                unacked.subscription.unacked--;
+                touched.add(unacked.subscription.queue);
+                if (requeue) requeued.add(unacked);
+            }
+            if (multiple) {
+                settled.clear();
+            } else {
+                state.unacked.remove(tag);
+            }
+            for (int i = requeued.size() - 1; i >= 0; i--) {
+                Unacked unacked = requeued.get(i);
+                unacked.subscription.queue.ready.addFirst(unacked.message.redelivered());
+            }
+            for (Queue queue : touched) {
+                dispatch(queue);
+            }
+        }
+    }
+
+    /** Fecha o channel: as entregas sem ack voltam para o início das filas, como no broker real. */
+    private void closeChannel(ChannelState state) {
+        synchronized (lock) {
+            if (!state.open) return;
+            state.open = false;
+            Set<Queue> touched = new HashSet<>();
+            for (Iterator<Unacked> it = state.unacked.descendingMap().values().iterator(); it.hasNext(); ) {
+                Unacked unacked = it.next();
+                unacked.subscription.queue.ready.addFirst(unacked.message.redelivered());
+                touched.add(unacked.subscription.queue);
+                it.remove();
+            }
+            for (Subscription subscription : state.subscriptions) {
+                subscription.queue.consumers.remove(subscription);
+                if (subscription.queue.exclusive && subscription.queue.consumers.isEmpty()) {
+                    queues.remove(subscription.queue.name);
+                }
+            }
+            state.subscriptions.clear();
+            for (Queue queue : touched) {
+                dispatch(queue);
+            }
+        }
+        state.dispatcher.shutdown();
+    }
+}
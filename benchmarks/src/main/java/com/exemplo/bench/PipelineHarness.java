@@ -0,0 +1,422 @@
+package com.exemplo.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Harness de ponta a ponta: gerador, rosto e brasao no mesmo processo, ligados pelo
+ * {@link InMemoryBroker}, com modelos, galeria e imagens sintéticos (ver {@link Synthetic}), sem
+ * rede nem Docker. Para cada cenário mede a vazão de resultados, os percentis da latência fim a
+ * fim (timestamp da mensagem até a chegada do resultado) e a taxa de alocação.
+ *
+ * <p>Os serviços leem a configuração de variáveis de ambiente na carga das classes, então cada
+ * cenário roda em uma JVM própria, como os forks do JMH, com as variáveis do cenário (valem para os
+ * três serviços) e as mesmas opções de JVM do processo pai. O pai imprime a tabela comparativa e
+ * grava tudo em JSON.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.exemplo.bench.PipelineHarness [opções] [cenário ...]
+ *   cenário: nome de um pré-definido ({@link #PRESETS}) ou nome:VAR=valor,VAR=valor
+ *   --messages N   mensagens por cenário (padrão 1000)
+ *   --rate R       taxa do gerador em msg/s (padrão 50)
+ *   --images N     imagens sintéticas distintas por tipo (padrão 20)
+ *   --gallery N    brasões na galeria sintética (padrão 1000)
+ *   --timeout S    limite por cenário, em segundos (padrão 300)
+ *   --out ARQUIVO  resultado em JSON (padrão pipeline-result.json)
+ * </pre>
+ */
+public class PipelineHarness {
+
+    static final Map<String, Map<String, String>> PRESETS = new LinkedHashMap<>();
+
+    static {
+        PRESETS.put("base", Map.of());
+        PRESETS.put("lote8", Map.of("BATCH_SIZE", "8"));
+        PRESETS.put("workers2", Map.of("WORKERS", "2"));
+        PRESETS.put("binario", Map.of("WIRE_FORMAT", "binary", "PRELOAD_PAYLOADS", "true"));
+        PRESETS.put("cache", Map.of("CACHE_SIZE", "10000"));
+    }
+
+    private static final List<String> DEFAULT_SCENARIOS = List.of("base", "lote8", "binario");
+    private static final int EMBEDDING_DIM = 1280;
+    private static final String RESULTS_EXCHANGE = System.getenv().getOrDefault("RESULTS_EXCHANGE", "image_results_exchange");
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private int messages = 1000;
+    private double rate = 50;
+    private int images = 20;
+    private int gallery = 1000;
+    private long timeoutSeconds = 300;
+    private String out = "pipeline-result.json";
+    private final Map<String, Map<String, String>> scenarios = new LinkedHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        PipelineHarness harness = new PipelineHarness();
+        String resultFile = harness.parse(args);
+        if (resultFile != null) {
+            int status = harness.runScenario(Paths.get(resultFile));
+            System.exit(status);
+        }
+        harness.runAll();
+    }
+
+    /** Lê as opções; devolve o arquivo de resultado quando este processo é o fork de um cenário. */
+    private String parse(String[] args) {
+        String resultFile = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--messages": messages = Integer.parseInt(args[++i]); break;
+                case "--rate": rate = Double.parseDouble(args[++i]); break;
+                case "--images": images = Integer.parseInt(args[++i]); break;
+                case "--gallery": gallery = Integer.parseInt(args[++i]); break;
+                case "--timeout": timeoutSeconds = Long.parseLong(args[++i]); break;
+                case "--out": out = args[++i]; break;
+                case "--run": resultFile = args[++i]; break;
+                default: addScenario(args[i]);
+            }
+        }
+        if (scenarios.isEmpty()) {
+            DEFAULT_SCENARIOS.forEach(this::addScenario);
+        }
+        return resultFile;
+    }
+
+    private void addScenario(String spec) {
+        int colon = spec.indexOf(':');
+        String name = colon < 0 ? spec : spec.substring(0, colon);
+        Map<String, String> env = new LinkedHashMap<>(PRESETS.getOrDefault(name, Map.of()));
+        if (colon < 0 && !PRESETS.containsKey(name)) {
+            throw new IllegalArgumentException("Cenário desconhecido: " + name + " (pré-definidos: " + PRESETS.keySet() + ")");
+        }
+        if (colon >= 0) {
+            for (String pair : spec.substring(colon + 1).split(",")) {
+                String[] kv = pair.split("=", 2);
+                if (kv.length != 2) throw new IllegalArgumentException("Variável inválida no cenário " + name + ": " + pair);
+                env.put(kv[0].trim(), kv[1].trim());
+            }
+        }
+        scenarios.put(name, env);
+    }
+
+    // --- processo pai -------------------------------------------------------------------------
+
+    private void runAll() throws Exception {
+        Path root = Files.createTempDirectory("pipeline-");
+        System.out.printf("%d mensagens por cenário a %.0f msg/s; diretórios e saídas em %s%n", messages, rate, root);
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> scenario : scenarios.entrySet()) {
+            Map<String, Object> result = fork(root.resolve(scenario.getKey()), scenario.getKey(), scenario.getValue());
+            results.add(result);
+            System.out.println(summary(result));
+        }
+        System.out.println();
+        System.out.printf("%-12s %9s %8s %8s %8s %8s %10s %8s %5s%n",
+                "cenário", "msg/s", "p50 ms", "p90 ms", "p99 ms", "máx ms", "aloc MB/s", "KB/msg", "GCs");
+        for (Map<String, Object> result : results) {
+            if (!result.containsKey("msgsPerSecond")) {
+                System.out.printf("%-12s %s%n", result.get("scenario"), result.get("error"));
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> latency = (Map<String, Object>) result.get("latencyMs");
+            System.out.printf("%-12s %9.1f %8s %8s %8s %8s %10.1f %8.1f %5s%n", result.get("scenario"),
+                    ((Number) result.get("msgsPerSecond")).doubleValue(), latency.get("p50"), latency.get("p90"),
+                    latency.get("p99"), latency.get("max"), ((Number) result.get("allocationMBPerSecond")).doubleValue(),
+                    ((Number) result.get("allocatedKBPerMessage")).doubleValue(), result.get("gcCount"));
+        }
+        mapper.writeValue(new File(out), results);
+        System.out.println("Resultados gravados em " + out);
+    }
+
+    private Map<String, Object> fork(Path dir, String name, Map<String, String> overrides) throws Exception {
+        Files.createDirectories(dir);
+        Path resultFile = dir.resolve("resultado.json");
+        Path log = dir.resolve("saida.log");
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!arg.startsWith("-agentlib:jdwp")) command.add(arg);
+        }
+        // o fork roda no diretório do cenário, então o classpath vai absoluto
+        StringBuilder classpath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (classpath.length() > 0) classpath.append(File.pathSeparator);
+            classpath.append(Paths.get(entry).toAbsolutePath());
+        }
+        command.addAll(Arrays.asList("-cp", classpath.toString(), PipelineHarness.class.getName(),
+                "--run", resultFile.toString(), "--images", String.valueOf(images), "--gallery", String.valueOf(gallery),
+                "--timeout", String.valueOf(timeoutSeconds)));
+
+        ProcessBuilder builder = new ProcessBuilder(command).directory(dir.toFile())
+                .redirectErrorStream(true).redirectOutput(log.toFile());
+        Map<String, String> env = builder.environment();
+        env.put("LOAD_MESSAGE_COUNT", String.valueOf(messages));
+        env.put("LOAD_RATE", String.valueOf(rate));
+        env.put("METRICS_PORT", "0");
+        // imagens repetidas: sem isso o cache responderia quase tudo e a inferência não seria medida
+        env.put("CACHE_SIZE", "0");
+        env.put("FACES_DIR", dir.resolve("base-rosto").toString());
+        env.put("FOOTBALL_DIR", dir.resolve("base-brasao").toString());
+        env.put("BLOB_DIR", dir.resolve("blobs").toString());
+        env.put("HNSW_FILE", dir.resolve("hnsw.bin").toString());
+        env.put("HARNESS_SCENARIO", name);
+        env.put("HARNESS_OVERRIDES", overrides.toString());
+        env.putAll(overrides);
+
+        System.out.println("Cenário " + name + " " + overrides + " (saída em " + log + ")");
+        Process process = builder.start();
+        if (!process.waitFor(timeoutSeconds + 120, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            return failure(name, overrides, "fork não terminou em " + (timeoutSeconds + 120) + " s");
+        }
+        if (!Files.exists(resultFile)) {
+            return failure(name, overrides, "fork terminou com código " + process.exitValue() + " sem resultado; ver " + log);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> result = mapper.readValue(resultFile.toFile(), Map.class);
+        return result;
+    }
+
+    private static Map<String, Object> failure(String name, Map<String, String> overrides, String error) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("scenario", name);
+        result.put("env", overrides);
+        result.put("error", error);
+        return result;
+    }
+
+    private static String summary(Map<String, Object> result) {
+        if (result.containsKey("error") && !result.containsKey("msgsPerSecond")) {
+            return "  falhou: " + result.get("error");
+        }
+        return String.format("  %s/%s resultados em %.1f s: %.1f msg/s, latência %s ms, %.1f MB/s alocados",
+                result.get("received"), result.get("messages"), ((Number) result.get("seconds")).doubleValue(),
+                ((Number) result.get("msgsPerSecond")).doubleValue(), result.get("latencyMs"),
+                ((Number) result.get("allocationMBPerSecond")).doubleValue())
+                + (result.containsKey("error") ? " (" + result.get("error") + ")" : "");
+    }
+
+    // --- fork de um cenário -------------------------------------------------------------------
+
+    /** Sobe os três serviços contra o broker em memória, envia a carga e grava as medidas. */
+    private int runScenario(Path resultFile) throws Exception {
+        int expected = Integer.parseInt(System.getenv().getOrDefault("LOAD_MESSAGE_COUNT", String.valueOf(messages)));
+        writeImages(Paths.get(System.getenv("FACES_DIR")), 128, 128, 1);
+        writeImages(Paths.get(System.getenv("FOOTBALL_DIR")), 320, 240, 1_000_000);
+
+        InMemoryBroker broker = new InMemoryBroker();
+        ConnectionFactory factory = broker.connectionFactory();
+
+        com.exemplo.rosto.Main rosto = new com.exemplo.rosto.Main(
+                new com.exemplo.rosto.Main.SentimentAnalyzer(Synthetic.sentimentNetwork()));
+        rosto.connectRabbitMQ(factory);
+        rosto.startConsuming();
+
+        String[] labels = new String[gallery];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = "clube-" + i;
+        }
+        com.exemplo.brasao.Main.Gallery clubs = new com.exemplo.brasao.Main.Gallery(
+                Synthetic.vectors(gallery, EMBEDDING_DIM, 7), labels, EMBEDDING_DIM);
+        com.exemplo.brasao.Main brasao = new com.exemplo.brasao.Main(new com.exemplo.brasao.Main.EmbeddingAnalyzer(
+                com.exemplo.brasao.Main.createSearchIndex(clubs), Synthetic.embeddingGraph(EMBEDDING_DIM)));
+        brasao.connectRabbitMQ(factory);
+        brasao.startConsuming();
+
+        // latências em ordem de chegada; o gerador também assina os resultados, mas só imprime
+        long[] latencies = new long[expected];
+        AtomicInteger received = new AtomicInteger();
+        long[] lastResult = new long[1];
+        CountDownLatch done = new CountDownLatch(1);
+        Connection observer = factory.newConnection();
+        Channel results = observer.createChannel();
+        results.exchangeDeclare(RESULTS_EXCHANGE, BuiltinExchangeType.TOPIC, true);
+        String queue = results.queueDeclare().getQueue();
+        results.queueBind(queue, RESULTS_EXCHANGE, "#");
+        ObjectMapper json = new ObjectMapper();
+        results.basicConsume(queue, true, (tag, delivery) -> {
+            long now = System.currentTimeMillis();
+            long timestamp = json.readTree(delivery.getBody()).path("timestamp").asLong(now);
+            int n = received.getAndIncrement();
+            if (n < latencies.length) latencies[n] = Math.max(0, now - timestamp);
+            lastResult[0] = System.nanoTime();
+            if (n + 1 == expected) done.countDown();
+        }, tag -> {});
+
+        com.exemplo.gerador.Main gerador = new com.exemplo.gerador.Main();
+        gerador.connectRabbitMQ(factory);
+        gerador.loadImages();
+
+        AllocationSampler allocation = new AllocationSampler();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcMillis();
+        long start = System.nanoTime();
+        allocation.start();
+        Thread sender = new Thread(() -> {
+            try {
+                gerador.startSending();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "gerador");
+        sender.start();
+
+        boolean complete = done.await(timeoutSeconds, TimeUnit.SECONDS);
+        long end = complete ? lastResult[0] : System.nanoTime();
+        long allocated = allocation.stop();
+        long gcCount = gcCount() - gcCountBefore;
+        long gcTime = gcMillis() - gcTimeBefore;
+        sender.join(TimeUnit.SECONDS.toMillis(30));
+
+        int count = Math.min(received.get(), expected);
+        double seconds = (end - start) / 1e9;
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("scenario", System.getenv().getOrDefault("HARNESS_SCENARIO", "cenario"));
+        result.put("env", System.getenv().getOrDefault("HARNESS_OVERRIDES", "{}"));
+        result.put("messages", expected);
+        result.put("received", count);
+        result.put("seconds", seconds);
+        result.put("msgsPerSecond", count / seconds);
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", percentile(sorted, 0.50));
+        latency.put("p90", percentile(sorted, 0.90));
+        latency.put("p99", percentile(sorted, 0.99));
+        latency.put("p999", percentile(sorted, 0.999));
+        latency.put("max", count == 0 ? 0 : sorted[count - 1]);
+        latency.put("mean", count == 0 ? 0 : Arrays.stream(sorted).average().orElse(0));
+        result.put("latencyMs", latency);
+        result.put("allocatedMB", allocated / 1048576.0);
+        result.put("allocationMBPerSecond", allocated / 1048576.0 / seconds);
+        result.put("allocatedKBPerMessage", count == 0 ? 0 : allocated / 1024.0 / count);
+        result.put("gcCount", gcCount);
+        result.put("gcMillis", gcTime);
+        result.put("brokerPublished", broker.published.sum());
+        result.put("brokerDelivered", broker.delivered.sum());
+        result.put("brokerReady", broker.readyMessages());
+        result.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        if (!complete) {
+            result.put("error", "tempo esgotado com " + count + " de " + expected + " resultados");
+        }
+        mapper.writeValue(resultFile.toFile(), result);
+
+        rosto.close();
+        brasao.close();
+        gerador.close();
+        return complete ? 0 : 2;
+    }
+
+    private void writeImages(Path dir, int width, int height, long seed) throws IOException {
+        Files.createDirectories(dir);
+        for (int i = 0; i < images; i++) {
+            Files.write(dir.resolve("sintetica-" + i + ".jpg"), Synthetic.encoded(width, height, seed + i, "jpg"));
+        }
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Bytes alocados por todas as threads desde {@link #start()}, pelo contador por thread da
+     * HotSpot. Threads que terminam entre duas amostras perdem no máximo um intervalo (20 ms) de
+     * alocação; as threads dos serviços vivem o cenário inteiro.
+     */
+    static final class AllocationSampler {
+        private static final long INTERVAL_MS = 20;
+
+        private final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // id da thread -> {bytes na primeira amostra (0 se nasceu depois do início), última leitura}
+        private final Map<Long, long[]> seen = new HashMap<>();
+        private volatile boolean running;
+        private Thread sampler;
+
+        void start() {
+            threads.setThreadAllocatedMemoryEnabled(true);
+            sample(true);
+            running = true;
+            sampler = new Thread(() -> {
+                while (running) {
+                    sample(false);
+                    try {
+                        Thread.sleep(INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "amostrador-alocacao");
+            sampler.setDaemon(true);
+            sampler.start();
+        }
+
+        long stop() throws InterruptedException {
+            running = false;
+            sampler.join();
+            sample(false);
+            long total = 0;
+            synchronized (this) {
+                for (long[] entry : seen.values()) {
+                    total += entry[1] - entry[0];
+                }
+            }
+            return total;
+        }
+
+        private synchronized void sample(boolean baseline) {
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] < 0) continue;
+                long[] entry = seen.get(ids[i]);
+                if (entry == null) {
+                    seen.put(ids[i], new long[]{baseline ? bytes[i] : 0, bytes[i]});
+                } else {
+                    entry[1] = bytes[i];
+                }
+            }
+        }
+    }
+}
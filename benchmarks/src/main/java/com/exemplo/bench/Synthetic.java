@@ -0,0 +1,126 @@
+package com.exemplo.bench;
+
+import org.deeplearning4j.nn.conf.CNN2DFormat;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.PoolingType;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * Modelos e imagens sintéticos com as mesmas formas de entrada e saída dos reais, para medir
+ * sem o {@code model.h5}. Os pesos são aleatórios: servem para tempo, não para acurácia.
+ */
+public final class Synthetic {
+
+    private Synthetic() {}
+
+    /**
+     * Extrator de embeddings no lugar da MobileNetV2: [N,224,224,3] NHWC, três convoluções com
+     * stride 2, pooling global e uma densa de {@code dim} saídas.
+     */
+    public static ComputationGraph embeddingGraph(int dim) {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(42)
+                .weightInit(WeightInit.XAVIER)
+                .graphBuilder()
+                .addInputs("input")
+                .setInputTypes(InputType.convolutional(224, 224, 3, CNN2DFormat.NHWC))
+                .addLayer("conv1", conv(32, 2), "input")
+                .addLayer("conv2", conv(64, 2), "conv1")
+                .addLayer("conv3", conv(128, 2), "conv2")
+                .addLayer("pool", new GlobalPoolingLayer.Builder(PoolingType.AVG).build(), "conv3")
+                .addLayer("embedding", new DenseLayer.Builder().nOut(dim).activation(Activation.IDENTITY).build(), "pool")
+                .setOutputs("embedding")
+                .build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+        return graph;
+    }
+
+    /** Classificador no lugar do modelo de sentimentos: [N,48,48,1] NHWC e softmax de 2 classes. */
+    public static MultiLayerNetwork sentimentNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(42)
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(conv(32, 1))
+                .layer(new SubsamplingLayer.Builder(PoolingType.MAX).kernelSize(2, 2).stride(2, 2)
+                        .dataFormat(CNN2DFormat.NHWC).build())
+                .layer(conv(64, 1))
+                .layer(new SubsamplingLayer.Builder(PoolingType.MAX).kernelSize(2, 2).stride(2, 2)
+                        .dataFormat(CNN2DFormat.NHWC).build())
+                .layer(new DenseLayer.Builder().nOut(128).activation(Activation.RELU).build())
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(2).activation(Activation.SOFTMAX).build())
+                .setInputType(InputType.convolutional(48, 48, 1, CNN2DFormat.NHWC))
+                .build();
+        MultiLayerNetwork network = new MultiLayerNetwork(conf);
+        network.init();
+        return network;
+    }
+
+    private static ConvolutionLayer conv(int nOut, int stride) {
+        return new ConvolutionLayer.Builder(3, 3)
+                .stride(stride, stride)
+                .nOut(nOut)
+                .activation(Activation.RELU)
+                .dataFormat(CNN2DFormat.NHWC)
+                .build();
+    }
+
+    /** Imagem width x height com gradiente e ruído, para o codec não comprimir demais. */
+    public static BufferedImage image(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(0xFFFFFF)),
+                width, height, new Color(random.nextInt(0xFFFFFF))));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        for (int i = 0; i < width * height / 8; i++) {
+            img.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt(0xFFFFFF));
+        }
+        return img;
+    }
+
+    /** A mesma imagem codificada no formato pedido ("jpg" ou "png"). */
+    public static byte[] encoded(int width, int height, long seed, String format) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image(width, height, seed), format, out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** {@code count} vetores aleatórios de dimensão {@code dim}, contíguos. */
+    public static double[] vectors(int count, int dim, long seed) {
+        Random random = new Random(seed);
+        double[] v = new double[count * dim];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = random.nextGaussian();
+        }
+        return v;
+    }
+}
@@ -0,0 +1,109 @@
+package com.exemplo.brasao;
+
+import com.exemplo.bench.Synthetic;
+import com.exemplo.consumer.ImageDecoder;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code EmbeddingAnalyzer} estágio por estágio (decode completo e reduzido, resize, tensor, {@code outputSingle})
+ * e o lote completo, sobre o modelo sintético e imagens geradas do tamanho pedido.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbeddingAnalyzerBenchmark {
+
+    @Param({"640", "3000"})
+    public int imageSize;
+
+    @Param({"1", "8"})
+    public int batchSize;
+
+    @Param({"1280"})
+    public int embeddingDim;
+
+    @Param({"2000"})
+    public int galleryLength;
+
+    private byte[] jpeg;
+    private BufferedImage decoded;
+    private List<ByteBuffer> batch;
+    private Main.EmbeddingAnalyzer.Preprocessor preprocessor;
+    private ComputationGraph model;
+    private Main.EmbeddingAnalyzer analyzer;
+    private INDArray input;
+
+    @Setup
+    public void setup() throws IOException {
+        jpeg = Synthetic.encoded(imageSize, imageSize * 3 / 4, 1, "jpg");
+        decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        batch = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(ByteBuffer.wrap(Synthetic.encoded(imageSize, imageSize * 3 / 4, i + 1, "jpg")));
+        }
+        preprocessor = new Main.EmbeddingAnalyzer.Preprocessor();
+        model = Synthetic.embeddingGraph(embeddingDim);
+
+        String[] labels = new String[galleryLength];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = "clube-" + i;
+        }
+        Main.Gallery gallery = new Main.Gallery(Synthetic.vectors(galleryLength, embeddingDim, 7), labels, embeddingDim);
+        analyzer = new Main.EmbeddingAnalyzer(new Main.FlatIndex(gallery), model);
+
+        preprocessor.resizeImage(decoded);
+        for (int n = 0; n < batchSize; n++) {
+            preprocessor.imageToBuffer(n);
+        }
+        input = preprocessor.toINDArray(batchSize).dup();
+    }
+
+    @Benchmark
+    public BufferedImage imageRead() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    /** Decode com subamostragem da origem até perto de 224x224 ({@code FAST_DECODE}). */
+    @Benchmark
+    public BufferedImage imageReadReduced() throws IOException {
+        return ImageDecoder.decode(ByteBuffer.wrap(jpeg), Main.EmbeddingAnalyzer.Preprocessor.SIZE,
+                Main.EmbeddingAnalyzer.Preprocessor.SIZE, false);
+    }
+
+    @Benchmark
+    public void resizeImage() {
+        preprocessor.resizeImage(decoded);
+    }
+
+    @Benchmark
+    public INDArray imageToINDArray() {
+        for (int n = 0; n < batchSize; n++) {
+            preprocessor.imageToBuffer(n);
+        }
+        return preprocessor.toINDArray(batchSize);
+    }
+
+    @Benchmark
+    public INDArray outputSingle() {
+        return model.outputSingle(input);
+    }
+
+    @Benchmark
+    public List<List<Main.Match>> analyzeBatch() {
+        return analyzer.analyzeBatch(batch, 3);
+    }
+}
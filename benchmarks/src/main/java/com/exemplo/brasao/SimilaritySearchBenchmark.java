@@ -0,0 +1,94 @@
+package com.exemplo.brasao;
+
+import com.exemplo.bench.Synthetic;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Busca top-k na galeria: a varredura por similaridade de cosseno ({@code FlatIndex}), o HNSW e a
+ * varredura quantizada em int8/float16 com re-rank exato ({@code QuantizedIndex}), com a galeria
+ * no heap (float64) ou mapeada do formato binário (float32).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimilaritySearchBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({"2000", "50000"})
+    public int galleryLength;
+
+    @Param({"1280"})
+    public int embeddingDim;
+
+    @Param({"heap64", "mmap32"})
+    public String galleryFormat;
+
+    @Param({"flat", "hnsw", "int8", "fp16"})
+    public String index;
+
+    @Param({"3"})
+    public int k;
+
+    private Main.SearchIndex search;
+    private double[][] queries;
+    private int next;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        String[] labels = new String[galleryLength];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = "clube-" + i;
+        }
+        Main.Gallery gallery = new Main.Gallery(Synthetic.vectors(galleryLength, embeddingDim, 7), labels, embeddingDim);
+        if (galleryFormat.equals("mmap32")) {
+            file = Files.createTempFile("galeria", ".bin");
+            gallery.writeBinary(file, Main.Gallery.DTYPE_FLOAT32);
+            gallery = Main.Gallery.open(file);
+        }
+        switch (index) {
+            case "hnsw":
+                search = Main.HnswIndex.build(gallery, 16, 200, 64);
+                break;
+            case "int8":
+            case "fp16":
+                search = Main.QuantizedIndex.build(gallery, index, 32);
+                break;
+            default:
+                search = new Main.FlatIndex(gallery);
+        }
+
+        // consultas próximas de itens da galeria, como embeddings de brasões conhecidos
+        Random random = new Random(11);
+        double[] base = Synthetic.vectors(galleryLength, embeddingDim, 7);
+        queries = new double[QUERIES][embeddingDim];
+        for (int q = 0; q < QUERIES; q++) {
+            int row = random.nextInt(galleryLength);
+            for (int d = 0; d < embeddingDim; d++) {
+                queries[q][d] = base[row * embeddingDim + d] + 0.1 * random.nextGaussian();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (file != null) Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<Main.Match> search() {
+        double[] query = queries[next++ & (QUERIES - 1)];
+        return search.search(query, k);
+    }
+}
@@ -0,0 +1,78 @@
+package com.exemplo.gerador;
+
+import com.exemplo.bench.Synthetic;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ida e volta do {@code MensagemImagem} pelo Jackson (o JSON com a imagem em base64) e, para
+ * comparação, o corpo pré-serializado do {@code PayloadCache} com id e timestamp reescritos.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageSerializationBenchmark {
+
+    @Param({"64", "640"})
+    public int imageSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Main.MensagemImagem message;
+    private byte[] json;
+    private Main.PayloadCache.Payload preloaded;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] image = Synthetic.encoded(imageSize, imageSize, 1, "jpg");
+        file = Files.createTempFile("imagem", ".jpg");
+        Files.write(file, image);
+
+        message = new Main.MensagemImagem();
+        message.setId(UUID.randomUUID().toString());
+        message.setType("face");
+        message.setFileName(file.toString());
+        message.setTimestamp(System.currentTimeMillis());
+        message.setImageData(image);
+        json = objectMapper.writeValueAsBytes(message);
+
+        Main.PayloadCache cache = Main.PayloadCache.load(Collections.singletonList(file), Collections.emptyList(),
+                objectMapper, null, true, 64L << 20);
+        preloaded = cache.pick("face");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytes() throws IOException {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Main.MensagemImagem readValue() throws IOException {
+        return objectMapper.readValue(json, Main.MensagemImagem.class);
+    }
+
+    @Benchmark
+    public Main.MensagemImagem roundTrip() throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(message), Main.MensagemImagem.class);
+    }
+
+    @Benchmark
+    public byte[] preloadedBody() {
+        return preloaded.body(UUID.randomUUID().toString(), System.currentTimeMillis());
+    }
+}
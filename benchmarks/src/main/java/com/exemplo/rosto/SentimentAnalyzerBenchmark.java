@@ -0,0 +1,89 @@
+package com.exemplo.rosto;
+
+import com.exemplo.bench.Synthetic;
+import com.exemplo.consumer.ImageDecoder;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** {@code SentimentAnalyzer} estágio por estágio e o lote completo, sobre a rede sintética. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SentimentAnalyzerBenchmark {
+
+    @Param({"48", "256", "2000"})
+    public int imageSize;
+
+    @Param({"1", "32"})
+    public int batchSize;
+
+    private byte[] jpeg;
+    private BufferedImage decoded;
+    private List<ByteBuffer> batch;
+    private Main.SentimentAnalyzer.Preprocessor preprocessor;
+    private MultiLayerNetwork model;
+    private Main.SentimentAnalyzer analyzer;
+    private INDArray input;
+
+    @Setup
+    public void setup() throws IOException {
+        jpeg = Synthetic.encoded(imageSize, imageSize, 1, "jpg");
+        decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        batch = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(ByteBuffer.wrap(Synthetic.encoded(imageSize, imageSize, i + 1, "jpg")));
+        }
+        preprocessor = new Main.SentimentAnalyzer.Preprocessor();
+        model = Synthetic.sentimentNetwork();
+        analyzer = new Main.SentimentAnalyzer(model);
+
+        for (int n = 0; n < batchSize; n++) {
+            preprocessor.put(decoded, n);
+        }
+        input = preprocessor.toINDArray(batchSize).dup();
+    }
+
+    @Benchmark
+    public BufferedImage imageRead() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    /** Decode subamostrado até perto de 48x48, só com a luminância ({@code FAST_DECODE}). */
+    @Benchmark
+    public BufferedImage imageReadReduced() throws IOException {
+        return ImageDecoder.decode(ByteBuffer.wrap(jpeg), Main.SentimentAnalyzer.Preprocessor.SIZE,
+                Main.SentimentAnalyzer.Preprocessor.SIZE, true);
+    }
+
+    /** Resize para 48x48 em cinza e normalização de cada imagem, mais a cópia para o INDArray. */
+    @Benchmark
+    public INDArray preprocess() {
+        for (int n = 0; n < batchSize; n++) {
+            preprocessor.put(decoded, n);
+        }
+        return preprocessor.toINDArray(batchSize);
+    }
+
+    @Benchmark
+    public INDArray output() {
+        return model.output(input);
+    }
+
+    @Benchmark
+    public List<Main.SentimentAnalyzer.Result> analyzeBatch() {
+        return analyzer.analyzeBatch(batch);
+    }
+}
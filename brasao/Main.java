@@ -1,209 +1,1421 @@
 package com.exemplo;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.rabbitmq.client.*;
+import com.exemplo.consumer.ImageConsumer;
+import com.exemplo.consumer.ImageDecoder;
+import com.exemplo.consumer.LatencyHistogram;
 import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.modelimport.keras.KerasModelImport;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.io.*;
 import java.nio.file.*;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
-public class Main {
+public class Main extends ImageConsumer<List<Main.Match>> {
 
-    private static final String QUEUE_NAME = "team_queue";
+    private static final String EMBEDDINGS_FILE = "futebol_embeddings.txt";
+    private static final String LABELS_FILE = "futebol_labels.txt";
+    private static final String GALLERY_FILE = System.getenv().getOrDefault("GALLERY_FILE", "futebol_gallery.bin");
+    private static final int TOP_K = Integer.parseInt(System.getenv().getOrDefault("TOP_K", "3"));
+    private static final String SEARCH_INDEX = System.getenv().getOrDefault("SEARCH_INDEX", "flat");
+    private static final int RERANK_CANDIDATES = Integer.parseInt(System.getenv().getOrDefault("RERANK_CANDIDATES", "32"));
+    private static final String HNSW_FILE = System.getenv().getOrDefault("HNSW_FILE", "futebol_hnsw.bin");
+    private static final int HNSW_M = Integer.parseInt(System.getenv().getOrDefault("HNSW_M", "16"));
+    private static final int HNSW_EF_CONSTRUCTION = Integer.parseInt(System.getenv().getOrDefault("HNSW_EF_CONSTRUCTION", "200"));
+    private static final int HNSW_EF_SEARCH = Integer.parseInt(System.getenv().getOrDefault("HNSW_EF_SEARCH", "64"));
+    private static final int ND4J_THREADS_PER_WORKER = Integer.parseInt(System.getenv().getOrDefault("ND4J_THREADS_PER_WORKER", "0"));
+    private static final String MODEL_FILE = "model.h5";
+    private static final String NATIVE_MODEL_FILE = System.getenv().getOrDefault("NATIVE_MODEL_FILE", "model.zip");
 
-    private Connection connection;
-    private Channel channel;
-    private ObjectMapper objectMapper;
-    private EmbeddingAnalyzer analyzer;
-    private AtomicLong messagesProcessed;
+    static final LatencyHistogram SEARCH_LATENCY = METRICS.stage("search");
+
+    private final EmbeddingAnalyzer analyzer;
 
     public Main() {
-        this.objectMapper = new ObjectMapper();
-        this.analyzer = new EmbeddingAnalyzer(
-                "futebol_embeddings.txt",
-                "futebol_labels.txt",
-                "model.h5"
-        );
-        this.messagesProcessed = new AtomicLong(0);
+        this(loadAnalyzer());
     }
 
-    public void connectRabbitMQ() throws IOException, TimeoutException {
-        String host = System.getenv("RABBITMQ_HOST");
-        String user = System.getenv("RABBITMQ_USER");
-        String pass = System.getenv("RABBITMQ_PASS");
+    /** Com o analisador já montado; o harness de ponta a ponta passa modelo e galeria sintéticos. */
+    public Main(EmbeddingAnalyzer analyzer) {
+        super("brasao", "team", 640, 480);
+        this.analyzer = analyzer;
+    }
 
-        if (host == null || user == null || pass == null) {
-            throw new IllegalStateException("Variáveis de ambiente do RabbitMQ não definidas");
+    private static EmbeddingAnalyzer loadAnalyzer() {
+        try {
+            Gallery gallery = Gallery.load(GALLERY_FILE, EMBEDDINGS_FILE, LABELS_FILE);
+            return new EmbeddingAnalyzer(createSearchIndex(gallery), EmbeddingAnalyzer.loadModel(false));
+        } catch (Exception e) {
+            throw new RuntimeException("Erro ao inicializar EmbeddingAnalyzer", e);
         }
+    }
 
-        ConnectionFactory factory = new ConnectionFactory();
-        factory.setHost(host);
-        factory.setUsername(user);
-        factory.setPassword(pass);
+    /** O modelo do DL4J não pode ser compartilhado entre threads: cada worker além do primeiro ganha uma cópia. */
+    @Override
+    protected Replica<List<Match>> replica(int index) {
+        EmbeddingAnalyzer replica = index == 0 ? analyzer : analyzer.replicate();
+        return new Replica<List<Match>>() {
+            @Override
+            public List<List<Match>> infer(List<byte[]> pixels) {
+                return replica.analyzePreprocessed(pixels, TOP_K);
+            }
 
-        connection = factory.newConnection();
-        channel = connection.createChannel();
-        channel.queueDeclare(QUEUE_NAME, true, false, false, null);
-        channel.basicQos(1);
-        System.out.println("Conectado ao RabbitMQ em " + host);
+            @Override
+            public void warmUp(List<ByteBuffer> images) {
+                replica.analyzeBatch(images, TOP_K);
+            }
+        };
     }
 
-    public void startConsuming() throws IOException {
-        DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-            try {
-                ImageMessage msg = objectMapper.readValue(delivery.getBody(), ImageMessage.class);
-                String predictedLabel = analyzer.analyze(msg.getImageData());
+    @Override
+    protected byte[] preprocess(ByteBuffer image) throws IOException {
+        return EmbeddingAnalyzer.preprocess(image);
+    }
 
-                long count = messagesProcessed.incrementAndGet();
-                System.out.printf("[%s] Predicted: %s | Total processadas: %d\n",msg.getFileName(), predictedLabel, count);
+    @Override
+    protected boolean cacheable(List<Match> matches) {
+        return !matches.isEmpty();
+    }
 
-                channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+    @Override
+    protected String label(List<Match> matches) {
+        return matches.isEmpty() ? "ERRO" : matches.get(0).getLabel();
+    }
+
+    @Override
+    protected double confidence(List<Match> matches) {
+        return matches.isEmpty() ? 0.0 : matches.get(0).getScore();
+    }
+
+    @Override
+    protected String describe(List<Match> matches) {
+        return String.format("Predicted: %s | Top-%d: %s", label(matches), TOP_K, formatMatches(matches));
+    }
 
+    /**
+     * Grava o modelo no formato nativo (zip do ModelSerializer, sem o estado do updater) em um
+     * temporário no mesmo diretório e troca por rename atômico, para um boot concorrente nunca ler
+     * um arquivo pela metade. Falha ao gravar só gera aviso: o modelo importado segue em uso.
+     */
+    static void saveNativeModel(Model model, File target) {
+        Path tmp = null;
+        try {
+            tmp = target.toPath().resolveSibling(target.getName() + "." + ProcessHandle.current().pid() + ".tmp");
+            ModelSerializer.writeModel(model, tmp.toFile(), false);
+            Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Modelo salvo no formato nativo em " + target);
+        } catch (IOException e) {
+            System.err.println("Não foi possível salvar o modelo nativo em " + target + ": " + e.getMessage());
+            try { if (tmp != null) Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+        }
+    }
+
+    private static String formatMatches(List<Match> matches) {
+        StringBuilder sb = new StringBuilder();
+        for (Match m : matches) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(String.format("%s (%.3f)", m.getLabel(), m.getScore()));
+        }
+        return sb.toString();
+    }
+
+    public static SearchIndex createSearchIndex(Gallery gallery) throws IOException {
+        switch (SEARCH_INDEX.toLowerCase()) {
+            case "flat":
+                return new FlatIndex(gallery);
+            case "hnsw":
+                return HnswIndex.loadOrBuild(Paths.get(HNSW_FILE), gallery, HNSW_M, HNSW_EF_CONSTRUCTION, HNSW_EF_SEARCH);
+            case QuantizedIndex.INT8:
+            case QuantizedIndex.FLOAT16:
+                return QuantizedIndex.build(gallery, SEARCH_INDEX.toLowerCase(), RERANK_CANDIDATES);
+            default:
+                throw new IllegalArgumentException("SEARCH_INDEX desconhecido: " + SEARCH_INDEX);
+        }
+    }
+
+    /**
+     * Compara cada backend aproximado com a busca exata usando embeddings da própria galeria com
+     * ruído gaussiano como consultas, e imprime recall@k, concordância do top-1 e latência média.
+     */
+    public static void measureRecall(Gallery gallery, Map<String, SearchIndex> candidates, int k, int queries, double noise) {
+        FlatIndex exact = new FlatIndex(gallery);
+        Random random = new Random(42);
+        double[] query = new double[gallery.dim()];
+        long exactNanos = 0;
+        long[] hits = new long[candidates.size()];
+        long[] topHits = new long[candidates.size()];
+        long[] nanos = new long[candidates.size()];
+
+        for (int q = 0; q < queries; q++) {
+            gallery.copyRow(random.nextInt(gallery.size()), query);
+            for (int j = 0; j < query.length; j++) {
+                query[j] += random.nextGaussian() * noise;
+            }
+
+            long t0 = System.nanoTime();
+            List<Match> expected = exact.search(query, k);
+            exactNanos += System.nanoTime() - t0;
+            Set<Integer> expectedIds = new HashSet<>();
+            for (Match m : expected) expectedIds.add(m.getIndex());
+
+            int c = 0;
+            for (SearchIndex candidate : candidates.values()) {
+                long t1 = System.nanoTime();
+                List<Match> found = candidate.search(query, k);
+                nanos[c] += System.nanoTime() - t1;
+                for (Match m : found) if (expectedIds.contains(m.getIndex())) hits[c]++;
+                if (!found.isEmpty() && found.get(0).getIndex() == expected.get(0).getIndex()) topHits[c]++;
+                c++;
+            }
+        }
+
+        System.out.printf("Consultas: %d | Ruído: %.3f | Busca exata: %.1f us%n", queries, noise, exactNanos / 1000.0 / queries);
+        int c = 0;
+        for (String name : candidates.keySet()) {
+            System.out.printf("%-22s Recall@%d: %.4f | Top-1: %.4f | Latência média: %.1f us%n", name, k,
+                    hits[c] / (double) (queries * Math.min(k, gallery.size())), topHits[c] / (double) queries,
+                    nanos[c] / 1000.0 / queries);
+            c++;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--export-model")) {
+            try {
+                EmbeddingAnalyzer.loadModel(true);
             } catch (Exception e) {
-                System.err.println("Erro ao processar mensagem: " + e.getMessage());
                 e.printStackTrace();
+                System.exit(1);
             }
-        };
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--convert-gallery")) {
+            try {
+                boolean float64 = args.length > 1 && args[1].equals("float64");
+                Gallery.loadText(EMBEDDINGS_FILE, LABELS_FILE).writeBinary(Paths.get(GALLERY_FILE),
+                        float64 ? Gallery.DTYPE_FLOAT64 : Gallery.DTYPE_FLOAT32);
+                System.out.println("Galeria binária salva em " + GALLERY_FILE);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length > 0 && (args[0].equals("--build-index") || args[0].equals("--recall"))) {
+            try {
+                Gallery gallery = Gallery.load(GALLERY_FILE, EMBEDDINGS_FILE, LABELS_FILE);
+                if (args[0].equals("--build-index")) {
+                    HnswIndex.build(gallery, HNSW_M, HNSW_EF_CONSTRUCTION, HNSW_EF_SEARCH).save(Paths.get(HNSW_FILE));
+                    System.out.println("Índice HNSW salvo em " + HNSW_FILE);
+                } else {
+                    int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+                    double noise = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+                    HnswIndex hnsw = HnswIndex.loadOrBuild(Paths.get(HNSW_FILE), gallery, HNSW_M, HNSW_EF_CONSTRUCTION, HNSW_EF_SEARCH);
+                    Map<String, SearchIndex> candidates = new LinkedHashMap<>();
+                    candidates.put("hnsw (ef=" + hnsw.getEfSearch() + ")", hnsw);
+                    for (String mode : new String[]{QuantizedIndex.INT8, QuantizedIndex.FLOAT16}) {
+                        QuantizedIndex quantized = QuantizedIndex.build(gallery, mode, RERANK_CANDIDATES);
+                        candidates.put(mode + " (sem re-rank)", (q, n) -> quantized.search(q, n, false));
+                        candidates.put(mode + " (re-rank " + RERANK_CANDIDATES + ")", quantized);
+                    }
+                    measureRecall(gallery, candidates, TOP_K, queries, noise);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
 
-        channel.basicConsume(QUEUE_NAME, false, deliverCallback, consumerTag -> {});
+        if (ND4J_THREADS_PER_WORKER > 0) {
+            Nd4j.getEnvironment().setMaxThreads(ND4J_THREADS_PER_WORKER);
+            Nd4j.getEnvironment().setMaxMasterThreads(ND4J_THREADS_PER_WORKER);
+        }
+        ImageConsumer.run(Main::new);
     }
 
-    public void close() {
-        try { if (channel != null && channel.isOpen()) channel.close(); } catch (Exception ignored) {}
-        try { if (connection != null && connection.isOpen()) connection.close(); } catch (Exception ignored) {}
+    public static class EmbeddingAnalyzer {
+        private static final ThreadLocal<Preprocessor> PREPROCESSOR = ThreadLocal.withInitial(Preprocessor::new);
+
+        private final SearchIndex index;
+        private final ComputationGraph model;
+
+        /**
+         * Carrega o modelo do formato nativo do DL4J ({@code NATIVE_MODEL_FILE}) quando ele existe e
+         * não é mais antigo que o {@code model.h5}. Caso contrário importa o Keras (parse do HDF5 e
+         * conversão camada a camada, a parte lenta do boot) e grava o formato nativo para os
+         * próximos boots. {@code forceImport} ignora o arquivo nativo existente.
+         */
+        static ComputationGraph loadModel(boolean forceImport) throws Exception {
+            File keras = new File(MODEL_FILE);
+            File cached = new File(NATIVE_MODEL_FILE);
+            long start = System.nanoTime();
+            if (!forceImport && cached.isFile() && cached.lastModified() >= keras.lastModified()) {
+                try {
+                    ComputationGraph model = ComputationGraph.load(cached, false);
+                    System.out.printf("Modelo MobileNetV2 carregado do formato nativo %s em %d ms%n",
+                            NATIVE_MODEL_FILE, (System.nanoTime() - start) / 1_000_000);
+                    return model;
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Modelo nativo ilegível (" + e.getMessage() + "), reimportando " + MODEL_FILE);
+                }
+            }
+            ComputationGraph model = KerasModelImport.importKerasModelAndWeights(MODEL_FILE, false);
+            System.out.printf("Modelo MobileNetV2 importado do Keras em %d ms%n", (System.nanoTime() - start) / 1_000_000);
+            saveNativeModel(model, cached);
+            return model;
+        }
+
+        public EmbeddingAnalyzer(SearchIndex index, ComputationGraph model) {
+            this.index = index;
+            this.model = model;
+        }
+
+        /**
+         * Nova instância com uma cópia independente dos pesos, para uso em outra thread.
+         * O índice de busca é somente leitura e é compartilhado.
+         */
+        public EmbeddingAnalyzer replicate() {
+            return new EmbeddingAnalyzer(index, model.clone());
+        }
+
+        public String analyze(byte[] imageBytes) {
+            List<Match> matches = analyze(imageBytes, 1);
+            return matches.isEmpty() ? "ERRO" : matches.get(0).getLabel();
+        }
+
+        public List<Match> analyze(byte[] imageBytes, int k) {
+            return analyzeBatch(Collections.singletonList(ByteBuffer.wrap(imageBytes)), k).get(0);
+        }
+
+        /**
+         * Extrai os embeddings de várias imagens com uma única chamada {@code outputSingle}
+         * sobre [N,224,224,3] e busca os k brasões mais similares de cada uma.
+         */
+        public List<List<Match>> analyzeBatch(List<ByteBuffer> images, int k) {
+            List<List<Match>> results = new ArrayList<>(images.size());
+            Preprocessor preprocessor = PREPROCESSOR.get();
+            int[] positions = new int[images.size()];
+            int count = 0;
+
+            for (int i = 0; i < images.size(); i++) {
+                results.add(new ArrayList<>());
+                try {
+                    long start = System.nanoTime();
+                    BufferedImage img = ImageDecoder.decode(images.get(i), Preprocessor.SIZE, Preprocessor.SIZE, false);
+                    IMAGE_READ_LATENCY.recordSince(start);
+                    preprocessor.resizeImage(img);
+                    preprocessor.imageToBuffer(count);
+                    positions[count++] = i;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+
+            return infer(preprocessor, results, positions, count, k);
+        }
+
+        /**
+         * Estágio de decode do pipeline: lê a imagem já reduzida e a redimensiona para 224x224 BGR,
+         * fora da thread do modelo. Devolve os pixels para {@link #analyzePreprocessed}.
+         */
+        public static byte[] preprocess(ByteBuffer image) throws IOException {
+            long start = System.nanoTime();
+            BufferedImage img = ImageDecoder.decode(image, Preprocessor.SIZE, Preprocessor.SIZE, false);
+            IMAGE_READ_LATENCY.recordSince(start);
+            return PREPROCESSOR.get().resizeImage(img).clone();
+        }
+
+        /** Busca os top-k de imagens vindas de {@link #preprocess}; entradas null (decode falhou) ficam vazias. */
+        public List<List<Match>> analyzePreprocessed(List<byte[]> images, int k) {
+            List<List<Match>> results = new ArrayList<>(images.size());
+            Preprocessor preprocessor = PREPROCESSOR.get();
+            int[] positions = new int[images.size()];
+            int count = 0;
+
+            for (int i = 0; i < images.size(); i++) {
+                results.add(new ArrayList<>());
+                if (images.get(i) != null) {
+                    preprocessor.imageToBuffer(images.get(i), count);
+                    positions[count++] = i;
+                }
+            }
+            return infer(preprocessor, results, positions, count, k);
+        }
+
+        private List<List<Match>> infer(Preprocessor preprocessor, List<List<Match>> results, int[] positions,
+                                        int count, int k) {
+            if (count > 0) {
+                try {
+                    INDArray input = preprocessor.toINDArray(count);
+                    long start = System.nanoTime();
+                    INDArray embeddings = model.outputSingle(input);
+                    INFERENCE_LATENCY.recordSince(start);
+                    embeddings = embeddings.reshape(count, embeddings.length() / count);
+                    for (int n = 0; n < count; n++) {
+                        double[] query = embeddings.getRow(n).toDoubleVector();
+                        long searchStart = System.nanoTime();
+                        results.set(positions[n], index.search(query, k));
+                        SEARCH_LATENCY.recordSince(searchStart);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+
+            return results;
+        }
+
+        /**
+         * Redimensiona para 224x224 BGR e normaliza direto do {@code byte[]} do raster para um
+         * {@code float[]} RGB reaproveitado, copiado em bloco para o INDArray de entrada.
+         * Uma instância por thread: em regime, nada é alocado por imagem.
+         */
+        static class Preprocessor {
+            static final int SIZE = 224;
+            static final int VALUES = SIZE * SIZE * 3;
+
+            private final BufferedImage scratch = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_3BYTE_BGR);
+            private final byte[] pixels = ((DataBufferByte) scratch.getRaster().getDataBuffer()).getData();
+            private final Graphics2D graphics = scratch.createGraphics();
+            private float[] values = new float[VALUES];
+            // entradas reaproveitadas, indexadas pelo tamanho do lote
+            private INDArray[] inputs = new INDArray[1];
+            // tempo de normalização acumulado no lote atual, somado à cópia em toINDArray
+            private long fillNanos;
+
+            Preprocessor() {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setColor(Color.BLACK);
+            }
+
+            /** Redimensiona para o raster reaproveitado e devolve os pixels BGR (válidos até a próxima chamada). */
+            byte[] resizeImage(BufferedImage original) {
+                long start = System.nanoTime();
+                graphics.fillRect(0, 0, SIZE, SIZE);
+                graphics.drawImage(original, 0, 0, SIZE, SIZE, null);
+                RESIZE_LATENCY.recordSince(start);
+                return pixels;
+            }
+
+            /** Grava a imagem redimensionada na posição n do lote, em NHWC RGB normalizado. */
+            void imageToBuffer(int n) {
+                imageToBuffer(pixels, n);
+            }
+
+            /** Grava pixels BGR 224x224 na posição n do lote, em NHWC RGB normalizado. */
+            void imageToBuffer(byte[] pixels, int n) {
+                long start = System.nanoTime();
+                int offset = n * VALUES;
+                if (values.length < offset + VALUES) {
+                    values = Arrays.copyOf(values, Math.max(values.length * 2, offset + VALUES));
+                }
+                // o raster TYPE_3BYTE_BGR guarda B, G, R em sequência
+                for (int i = 0; i < VALUES; i += 3) {
+                    values[offset + i] = (pixels[i + 2] & 0xFF) / 255f;
+                    values[offset + i + 1] = (pixels[i + 1] & 0xFF) / 255f;
+                    values[offset + i + 2] = (pixels[i] & 0xFF) / 255f;
+                }
+                fillNanos += System.nanoTime() - start;
+            }
+
+            INDArray toINDArray(int count) {
+                long start = System.nanoTime();
+                if (inputs.length <= count) {
+                    inputs = Arrays.copyOf(inputs, count + 1);
+                }
+                INDArray input = inputs[count];
+                if (input == null) {
+                    input = Nd4j.create(DataType.FLOAT, count, SIZE, SIZE, 3);
+                    inputs[count] = input;
+                }
+                input.data().asNioFloat().put(values, 0, count * VALUES);
+                TENSOR_LATENCY.record(fillNanos + System.nanoTime() - start);
+                fillNanos = 0;
+                return input;
+            }
+        }
     }
 
-    public static void main(String[] args) {
-        Main consumer = new Main();
-        Runtime.getRuntime().addShutdownHook(new Thread(consumer::close));
+    /** Backend de busca por similaridade de cosseno sobre a galeria. */
+    public interface SearchIndex {
+        List<Match> search(double[] query, int k);
+    }
 
-        try {
-            consumer.connectRabbitMQ();
-            consumer.startConsuming();
+    /**
+     * Galeria de embeddings contígua (linha i = embedding i), com cada linha já normalizada
+     * em L2, e os labels correspondentes. Pode vir dos arquivos texto (cópia no heap) ou do
+     * formato binário, mapeado com {@link FileChannel#map} e compartilhado via page cache.
+     *
+     * <p>Formato binário (little-endian): cabeçalho de 32 bytes (magic, versão, dtype, dim,
+     * quantidade, reservado, checksum), os vetores normalizados em float32 ou float64, e a
+     * tabela de labels: quantidade + 1 offsets int seguidos dos bytes UTF-8.
+     */
+    public static class Gallery {
+        private static final int MAGIC = 0x47414C59; // "GALY"
+        private static final int VERSION = 1;
+        private static final int HEADER_BYTES = 32;
+        public static final int DTYPE_FLOAT32 = 1;
+        public static final int DTYPE_FLOAT64 = 2;
 
-            while (true) {
-                Thread.sleep(1000);
+        private final int count;
+        private final int dim;
+        // exatamente um dos dois buffers é usado, conforme o dtype
+        private final DoubleBuffer doubles;
+        private final FloatBuffer floats;
+        private final String[] labels;
+        private final IntBuffer labelOffsets;
+        private final ByteBuffer labelBytes;
+        private long checksum;
+
+        public Gallery(double[] vectors, String[] labels, int dim) {
+            this(labels.length, dim, DoubleBuffer.wrap(vectors), null, labels, null, null, 0);
+            for (int i = 0; i < labels.length; i++) {
+                normalize(vectors, i * dim, dim);
             }
+        }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+        private Gallery(int count, int dim, DoubleBuffer doubles, FloatBuffer floats, String[] labels,
+                        IntBuffer labelOffsets, ByteBuffer labelBytes, long checksum) {
+            this.count = count;
+            this.dim = dim;
+            this.doubles = doubles;
+            this.floats = floats;
+            this.labels = labels;
+            this.labelOffsets = labelOffsets;
+            this.labelBytes = labelBytes;
+            this.checksum = checksum;
+        }
+
+        /** Usa o arquivo binário se existir; senão, faz o parse dos arquivos texto. */
+        public static Gallery load(String galleryFile, String embeddingsFile, String labelsFile) throws IOException {
+            Path binary = Paths.get(galleryFile);
+            if (Files.exists(binary)) {
+                return open(binary);
+            }
+            return loadText(embeddingsFile, labelsFile);
+        }
+
+        public static Gallery loadText(String embeddingsFile, String labelsFile) throws IOException {
+            List<String> embLines = Files.readAllLines(Paths.get(embeddingsFile), StandardCharsets.UTF_8);
+            List<String> lblLines = Files.readAllLines(Paths.get(labelsFile), StandardCharsets.UTF_8);
+
+            List<double[]> rows = new ArrayList<>();
+            for (String line : embLines) {
+                if (line.trim().isEmpty()) continue;
+                String[] parts = line.trim().split("\\s+");
+                rows.add(Arrays.stream(parts).mapToDouble(Double::parseDouble).toArray());
+            }
+            if (rows.isEmpty()) {
+                throw new IllegalStateException("Arquivo de embeddings vazio: " + embeddingsFile);
+            }
+            if (lblLines.size() < rows.size()) {
+                throw new IllegalStateException("Quantidade de labels (" + lblLines.size()
+                        + ") menor que a de embeddings (" + rows.size() + ")");
+            }
+
+            int dim = rows.get(0).length;
+            double[] vectors = new double[rows.size() * dim];
+            String[] labels = new String[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                double[] emb = rows.get(i);
+                if (emb.length != dim) {
+                    throw new IllegalStateException("Embedding " + i + " com dimensão " + emb.length + ", esperado " + dim);
+                }
+                System.arraycopy(emb, 0, vectors, i * dim, dim);
+                labels[i] = lblLines.get(i).trim();
+            }
+
+            System.out.println("Galeria carregada: " + labels.length + " x " + dim);
+            return new Gallery(vectors, labels, dim);
+        }
+
+        public static Gallery open(Path file) throws IOException {
+            MappedByteBuffer map;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Galeria binária maior que 2 GB: " + file);
+                }
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            map.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                throw new IOException("Formato de galeria desconhecido: " + file);
+            }
+            int dtype = map.getInt(8);
+            int dim = map.getInt(12);
+            int count = map.getInt(16);
+            long checksum = map.getLong(24);
+            int vectorBytes = count * dim * dtypeSize(dtype);
+            int tableOffset = HEADER_BYTES + vectorBytes;
+            int dataOffset = tableOffset + (count + 1) * Integer.BYTES;
+
+            ByteBuffer vectors = slice(map, HEADER_BYTES, vectorBytes);
+            IntBuffer offsets = slice(map, tableOffset, dataOffset - tableOffset).asIntBuffer();
+            ByteBuffer labelData = slice(map, dataOffset, map.capacity() - dataOffset);
+
+            System.out.printf("Galeria binária mapeada: %d x %d (%s) de %s%n",
+                    count, dim, dtype == DTYPE_FLOAT32 ? "float32" : "float64", file);
+            return new Gallery(count, dim,
+                    dtype == DTYPE_FLOAT64 ? vectors.asDoubleBuffer() : null,
+                    dtype == DTYPE_FLOAT32 ? vectors.asFloatBuffer() : null,
+                    null, offsets, labelData, checksum);
+        }
+
+        /** Grava a galeria no formato binário; usado pelo conversor {@code --convert-gallery}. */
+        public void writeBinary(Path file, int dtype) throws IOException {
+            int valueSize = dtypeSize(dtype);
+            byte[][] encodedLabels = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                encodedLabels[i] = label(i).getBytes(StandardCharsets.UTF_8);
+            }
+
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // reserva o cabeçalho; ele é escrito por último, quando o checksum é conhecido
+                out.write(ByteBuffer.allocate(HEADER_BYTES));
+                ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+                // o checksum é calculado sobre os valores como ficam gravados (após o arredondamento)
+                Checksum sum = new Checksum(count, dim);
+                for (int i = 0; i < count * dim; i++) {
+                    if (buf.remaining() < valueSize) flush(out, buf);
+                    double v = value(i);
+                    if (dtype == DTYPE_FLOAT32) {
+                        buf.putFloat((float) v);
+                        sum.add((float) v);
+                    } else {
+                        buf.putDouble(v);
+                        sum.add(v);
+                    }
+                }
+
+                int offset = 0;
+                for (int i = 0; i <= count; i++) {
+                    if (buf.remaining() < Integer.BYTES) flush(out, buf);
+                    buf.putInt(offset);
+                    if (i < count) offset += encodedLabels[i].length;
+                }
+                for (byte[] encoded : encodedLabels) {
+                    sum.add(new String(encoded, StandardCharsets.UTF_8));
+                    for (byte b : encoded) {
+                        if (!buf.hasRemaining()) flush(out, buf);
+                        buf.put(b);
+                    }
+                }
+                flush(out, buf);
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(dtype).putInt(dim).putInt(count).putInt(0).putLong(sum.value());
+                header.flip();
+                out.write(header, 0);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        public int size() { return count; }
+        public int dim() { return dim; }
+
+        public String label(int i) {
+            if (labels != null) return labels[i];
+            int start = labelOffsets.get(i);
+            byte[] encoded = new byte[labelOffsets.get(i + 1) - start];
+            labelBytes.duplicate().position(start).get(encoded);
+            return new String(encoded, StandardCharsets.UTF_8);
+        }
+
+        public double dot(int row, double[] q) {
+            double dot = 0;
+            int off = row * dim;
+            if (floats != null) {
+                for (int j = 0; j < dim; j++) dot += q[j] * floats.get(off + j);
+            } else {
+                for (int j = 0; j < dim; j++) dot += q[j] * doubles.get(off + j);
+            }
+            return dot;
+        }
+
+        /**
+         * Produto escalar da consulta com todas as linhas, em ordem. Copia cada linha em bloco
+         * para um array local, o que evita o acesso elemento a elemento ao buffer mapeado.
+         */
+        public void scan(double[] q, TopK top) {
+            if (doubles != null && doubles.hasArray()) {
+                double[] v = doubles.array();
+                for (int i = 0, off = 0; i < count; i++, off += dim) {
+                    double dot = 0;
+                    for (int j = 0; j < dim; j++) dot += q[j] * v[off + j];
+                    top.offer(i, dot);
+                }
+                return;
+            }
+            // leitura sequencial em bloco sobre uma view própria (a posição não é compartilhada)
+            FloatBuffer floatView = floats != null ? floats.duplicate().rewind() : null;
+            DoubleBuffer doubleView = doubles != null ? doubles.duplicate().rewind() : null;
+            float[] rowF = new float[dim];
+            double[] row = new double[dim];
+            for (int i = 0; i < count; i++) {
+                double dot = 0;
+                if (floatView != null) {
+                    floatView.get(rowF);
+                    for (int j = 0; j < dim; j++) dot += q[j] * rowF[j];
+                } else {
+                    doubleView.get(row);
+                    for (int j = 0; j < dim; j++) dot += q[j] * row[j];
+                }
+                top.offer(i, dot);
+            }
+        }
+
+        public double dot(int a, int b) {
+            double dot = 0;
+            int offA = a * dim, offB = b * dim;
+            if (floats != null) {
+                for (int j = 0; j < dim; j++) dot += floats.get(offA + j) * (double) floats.get(offB + j);
+            } else {
+                for (int j = 0; j < dim; j++) dot += doubles.get(offA + j) * doubles.get(offB + j);
+            }
+            return dot;
+        }
+
+        public void copyRow(int row, double[] dst) {
+            int off = row * dim;
+            for (int j = 0; j < dim; j++) dst[j] = value(off + j);
+        }
+
+        private double value(int i) {
+            return floats != null ? floats.get(i) : doubles.get(i);
+        }
+
+        /** Cópia normalizada da consulta, para que o cosseno vire um produto escalar. */
+        public double[] normalizedQuery(double[] query) {
+            if (query.length != dim) {
+                throw new IllegalArgumentException("Dimensão da consulta " + query.length + ", esperado " + dim);
+            }
+            double[] q = query.clone();
+            normalize(q, 0, dim);
+            return q;
+        }
+
+        /** Identifica o conteúdo da galeria, para detectar índices salvos desatualizados. */
+        public long checksum() {
+            if (checksum == 0) {
+                Checksum sum = new Checksum(count, dim);
+                for (int i = 0; i < count * dim; i++) sum.add(value(i));
+                for (int i = 0; i < count; i++) sum.add(label(i));
+                checksum = sum.value();
+            }
+            return checksum;
+        }
+
+        private static int dtypeSize(int dtype) {
+            switch (dtype) {
+                case DTYPE_FLOAT32: return Float.BYTES;
+                case DTYPE_FLOAT64: return Double.BYTES;
+                default: throw new IllegalArgumentException("dtype desconhecido: " + dtype);
+            }
+        }
+
+        private static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+            ByteBuffer dup = buf.duplicate();
+            dup.position(offset).limit(offset + length);
+            return dup.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private static void flush(FileChannel out, ByteBuffer buf) throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            buf.clear();
+        }
+
+        private static void normalize(double[] v, int offset, int length) {
+            double norm = 0;
+            for (int i = offset; i < offset + length; i++) {
+                norm += v[i] * v[i];
+            }
+            if (norm == 0) return;
+            double inv = 1.0 / Math.sqrt(norm);
+            for (int i = offset; i < offset + length; i++) {
+                v[i] *= inv;
+            }
+        }
+
+        private static class Checksum {
+            private long h = 1125899906842597L;
+
+            Checksum(int count, int dim) {
+                h = 31 * h + count;
+                h = 31 * h + dim;
+            }
+
+            void add(double v) { h = 31 * h + Double.doubleToLongBits(v); }
+            void add(String label) { h = 31 * h + label.hashCode(); }
+            long value() { return h == 0 ? 1 : h; }
         }
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class ImageMessage {
-        @JsonProperty("nomeArquivo") private String fileName;
-        @JsonProperty("dadosImagem") private byte[] imageData;
+    /** Busca exata: varredura linear de produtos escalares sobre a galeria normalizada. */
+    public static class FlatIndex implements SearchIndex {
+        private final Gallery gallery;
 
-        public String getFileName() { return fileName; }
-        public byte[] getImageData() { return imageData; }
+        public FlatIndex(Gallery gallery) {
+            this.gallery = gallery;
+        }
+
+        @Override
+        public List<Match> search(double[] query, int k) {
+            double[] q = gallery.normalizedQuery(query);
+            TopK top = new TopK(Math.min(k, gallery.size()));
+            gallery.scan(q, top);
+            return top.toMatches(gallery);
+        }
     }
 
-    public static class EmbeddingAnalyzer {
-        private final List<double[]> embeddingsTrain = new ArrayList<>();
-        private final List<String> labelsTrain = new ArrayList<>();
-        private final ComputationGraph model;
+    /**
+     * Busca em duas fases sobre uma cópia compacta da galeria: a varredura completa usa int8 com
+     * escala por vetor (1 byte por dimensão + 1 float por linha) ou float16 (2 bytes), e só os
+     * {@code rerank} melhores candidatos são reavaliados com o produto escalar exato da
+     * {@link Gallery}. Com a galeria mapeada, as páginas em precisão total só são tocadas no re-rank.
+     */
+    public static class QuantizedIndex implements SearchIndex {
+        public static final String INT8 = "int8";
+        public static final String FLOAT16 = "fp16";
+        // tabela de decodificação dos 65536 valores float16 (256 KB), mais rápida que os desvios do fromHalf
+        private static final float[] HALF_TO_FLOAT = new float[1 << 16];
 
-        public EmbeddingAnalyzer(String embeddingsFile, String labelsFile, String modelFile) {
-            try {
-                List<String> embLines = Files.readAllLines(Paths.get(embeddingsFile), StandardCharsets.UTF_8);
-                List<String> lblLines = Files.readAllLines(Paths.get(labelsFile), StandardCharsets.UTF_8);
+        static {
+            for (int h = 0; h < HALF_TO_FLOAT.length; h++) {
+                HALF_TO_FLOAT[h] = fromHalf((short) h);
+            }
+        }
 
-                for (String line : embLines) {
-                    String[] parts = line.trim().split("\\s+");
-                    double[] emb = Arrays.stream(parts).mapToDouble(Double::parseDouble).toArray();
-                    embeddingsTrain.add(emb);
+        private final Gallery gallery;
+        private final int count;
+        private final int dim;
+        private final int rerank;
+        // int8: codes + scales; float16: halves
+        private final byte[] codes;
+        private final float[] scales;
+        private final short[] halves;
+
+        private QuantizedIndex(Gallery gallery, int rerank, byte[] codes, float[] scales, short[] halves) {
+            this.gallery = gallery;
+            this.count = gallery.size();
+            this.dim = gallery.dim();
+            this.rerank = rerank;
+            this.codes = codes;
+            this.scales = scales;
+            this.halves = halves;
+        }
+
+        public static QuantizedIndex build(Gallery gallery, String mode, int rerank) {
+            int count = gallery.size(), dim = gallery.dim();
+            double[] row = new double[dim];
+            QuantizedIndex index;
+            if (mode.equals(INT8)) {
+                byte[] codes = new byte[count * dim];
+                float[] scales = new float[count];
+                for (int i = 0, off = 0; i < count; i++, off += dim) {
+                    gallery.copyRow(i, row);
+                    double max = 0;
+                    for (double v : row) max = Math.max(max, Math.abs(v));
+                    scales[i] = (float) (max / 127);
+                    double inv = max == 0 ? 0 : 127 / max;
+                    for (int j = 0; j < dim; j++) codes[off + j] = (byte) Math.round(row[j] * inv);
                 }
-                labelsTrain.addAll(lblLines);
+                index = new QuantizedIndex(gallery, rerank, codes, scales, null);
+            } else if (mode.equals(FLOAT16)) {
+                short[] halves = new short[count * dim];
+                for (int i = 0, off = 0; i < count; i++, off += dim) {
+                    gallery.copyRow(i, row);
+                    for (int j = 0; j < dim; j++) halves[off + j] = toHalf((float) row[j]);
+                }
+                index = new QuantizedIndex(gallery, rerank, null, null, halves);
+            } else {
+                throw new IllegalArgumentException("Quantização desconhecida: " + mode);
+            }
+            System.out.printf("Índice %s: %d x %d em %.1f MB (float64: %.1f MB), re-rank dos %d melhores%n",
+                    mode, count, dim, index.bytes() / 1e6, (double) count * dim * Double.BYTES / 1e6, rerank);
+            return index;
+        }
 
-                model = KerasModelImport.importKerasModelAndWeights(modelFile, false);
-                System.out.println("Modelo MobileNetV2 carregado com sucesso!");
+        @Override
+        public List<Match> search(double[] query, int k) {
+            return search(query, k, true);
+        }
 
-            } catch (Exception e) {
-                throw new RuntimeException("Erro ao inicializar EmbeddingAnalyzer", e);
+        /** Com {@code rerank = false} devolve direto a ordem e os scores aproximados da primeira fase. */
+        public List<Match> search(double[] query, int k, boolean rerank) {
+            double[] q = gallery.normalizedQuery(query);
+            int n = Math.min(k, count);
+            if (!rerank) {
+                TopK top = new TopK(n);
+                scan(q, top);
+                return top.toMatches(gallery);
             }
+            TopK candidates = new TopK(Math.min(count, Math.max(n, this.rerank)));
+            scan(q, candidates);
+            TopK top = new TopK(n);
+            for (int i = 0; i < candidates.size(); i++) {
+                int id = candidates.id(i);
+                top.offer(id, gallery.dot(id, q));
+            }
+            return top.toMatches(gallery);
         }
 
-        public String analyze(byte[] imageBytes) {
-            try {
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(imageBytes));
-                BufferedImage resized = resizeImage(img, 224, 224);
+        private void scan(double[] query, TopK top) {
+            if (codes != null) {
+                // a consulta também vira int8, e o produto escalar fica inteiro (vetorizável pelo JIT)
+                byte[] q = new byte[dim];
+                double max = 0;
+                for (double v : query) max = Math.max(max, Math.abs(v));
+                double inv = max == 0 ? 0 : 127 / max;
+                for (int j = 0; j < dim; j++) q[j] = (byte) Math.round(query[j] * inv);
+                float queryScale = (float) (max / 127);
+                for (int i = 0, off = 0; i < count; i++, off += dim) {
+                    int dot = 0;
+                    for (int j = 0; j < dim; j++) dot += q[j] * codes[off + j];
+                    top.offer(i, dot * scales[i] * queryScale);
+                }
+                return;
+            }
+            float[] q = new float[dim];
+            for (int j = 0; j < dim; j++) q[j] = (float) query[j];
+            float[] decode = HALF_TO_FLOAT;
+            for (int i = 0, off = 0; i < count; i++, off += dim) {
+                float dot = 0;
+                for (int j = 0; j < dim; j++) dot += q[j] * decode[halves[off + j] & 0xFFFF];
+                top.offer(i, dot);
+            }
+        }
+
+        long bytes() {
+            return codes != null ? codes.length + (long) scales.length * Float.BYTES : (long) halves.length * Short.BYTES;
+        }
+
+        /** float32 -> float16 (IEEE 754 binary16) com arredondamento para o par mais próximo. */
+        static short toHalf(float value) {
+            int bits = Float.floatToRawIntBits(value);
+            int sign = (bits >>> 16) & 0x8000;
+            int abs = bits & 0x7FFFFFFF;
+            if (abs >= 0x47800000) { // >= 65536: infinito (ou NaN)
+                return (short) (sign | (abs > 0x7F800000 ? 0x7E00 : 0x7C00));
+            }
+            if (abs < 0x38800000) { // < 2^-14: subnormal em float16, múltiplo de 2^-24
+                return (short) (sign | (int) Math.rint(Float.intBitsToFloat(abs) * 0x1p24f));
+            }
+            int half = (((abs >>> 23) - 112) << 10) | ((abs >>> 13) & 0x3FF);
+            int rest = abs & 0x1FFF;
+            if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) half++;
+            return (short) (sign | half);
+        }
+
+        static float fromHalf(short half) {
+            int bits = half & 0xFFFF;
+            int sign = (bits & 0x8000) << 16;
+            int exp = (bits >>> 10) & 0x1F;
+            int mantissa = bits & 0x3FF;
+            if (exp == 0) {
+                float v = mantissa * 0x1p-24f;
+                return sign == 0 ? v : -v;
+            }
+            if (exp == 31) {
+                return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+            }
+            return Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mantissa << 13));
+        }
+    }
+
+    /**
+     * Índice aproximado HNSW (Hierarchical Navigable Small World) sobre a galeria.
+     * Os vetores ficam na {@link Gallery}; o índice guarda só o grafo, que pode ser
+     * salvo em disco e recarregado sem reconstrução.
+     */
+    public static class HnswIndex implements SearchIndex {
+        private static final int MAGIC = 0x484E5357; // "HNSW"
+        private static final int VERSION = 1;
+
+        private final Gallery gallery;
+        private final int m;
+        private final int maxM0;
+        private final int efConstruction;
+        private final int efSearch;
+        private final int[] levels;
+        // links[nó][nível] = {quantidade, vizinhos...}
+        private final int[][][] links;
+        private int entryPoint = -1;
+        private int maxLevel = -1;
+        private final ThreadLocal<Scratch> scratch;
+
+        private HnswIndex(Gallery gallery, int m, int efConstruction, int efSearch, int[] levels) {
+            this.gallery = gallery;
+            this.m = m;
+            this.maxM0 = 2 * m;
+            this.efConstruction = efConstruction;
+            this.efSearch = efSearch;
+            this.levels = levels;
+            this.links = new int[levels.length][][];
+            for (int i = 0; i < levels.length; i++) {
+                links[i] = new int[levels[i] + 1][];
+                for (int l = 0; l <= levels[i]; l++) {
+                    links[i][l] = new int[1 + (l == 0 ? maxM0 : m)];
+                }
+            }
+            this.scratch = ThreadLocal.withInitial(() -> new Scratch(levels.length));
+        }
 
-                INDArray input = imageToINDArray(resized);
-                INDArray embeddingIND = model.outputSingle(input);
-                double[] embedding = embeddingIND.toDoubleVector();
+        public static HnswIndex build(Gallery gallery, int m, int efConstruction, int efSearch) {
+            long start = System.currentTimeMillis();
+            Random random = new Random(42);
+            double mL = 1.0 / Math.log(m);
+            int[] levels = new int[gallery.size()];
+            for (int i = 0; i < levels.length; i++) {
+                levels[i] = (int) (-Math.log(1.0 - random.nextDouble()) * mL);
+            }
+
+            HnswIndex index = new HnswIndex(gallery, m, efConstruction, efSearch, levels);
+            double[] vector = new double[gallery.dim()];
+            for (int i = 0; i < levels.length; i++) {
+                gallery.copyRow(i, vector);
+                index.insert(i, vector);
+            }
+            System.out.printf("Índice HNSW construído: %d nós, M=%d, efConstruction=%d (%d ms)%n",
+                    levels.length, m, efConstruction, System.currentTimeMillis() - start);
+            return index;
+        }
 
-                String bestLabel = "ERRO";
-                double bestSim = -1.0;
+        /** Carrega o índice salvo; se não existir ou não corresponder à galeria, reconstrói e salva. */
+        public static HnswIndex loadOrBuild(Path file, Gallery gallery, int m, int efConstruction, int efSearch) throws IOException {
+            if (Files.exists(file)) {
+                try {
+                    HnswIndex index = load(file, gallery, efSearch);
+                    System.out.println("Índice HNSW carregado de " + file);
+                    return index;
+                } catch (IOException e) {
+                    System.err.println("Índice HNSW descartado: " + e.getMessage());
+                }
+            }
+            HnswIndex index = build(gallery, m, efConstruction, efSearch);
+            index.save(file);
+            return index;
+        }
 
-                for (int i = 0; i < embeddingsTrain.size(); i++) {
-                    double sim = cosineSimilarity(embedding, embeddingsTrain.get(i));
-                    if (sim > bestSim) {
-                        bestSim = sim;
-                        bestLabel = labelsTrain.get(i).trim();
+        public void save(Path file) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(levels.length);
+                out.writeInt(gallery.dim());
+                out.writeLong(gallery.checksum());
+                out.writeInt(m);
+                out.writeInt(efConstruction);
+                out.writeInt(entryPoint);
+                out.writeInt(maxLevel);
+                for (int i = 0; i < levels.length; i++) {
+                    out.writeInt(levels[i]);
+                    for (int l = 0; l <= levels[i]; l++) {
+                        int[] list = links[i][l];
+                        out.writeInt(list[0]);
+                        for (int j = 1; j <= list[0]; j++) {
+                            out.writeInt(list[j]);
+                        }
                     }
                 }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        public static HnswIndex load(Path file, Gallery gallery, int efSearch) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("formato desconhecido em " + file);
+                }
+                int count = in.readInt();
+                int dim = in.readInt();
+                long checksum = in.readLong();
+                if (count != gallery.size() || dim != gallery.dim() || checksum != gallery.checksum()) {
+                    throw new IOException("índice não corresponde à galeria atual");
+                }
+                int m = in.readInt();
+                int efConstruction = in.readInt();
+                int entryPoint = in.readInt();
+                int maxLevel = in.readInt();
 
-                return bestLabel;
+                int[] levels = new int[count];
+                int[][][] lists = new int[count][][];
+                for (int i = 0; i < count; i++) {
+                    levels[i] = in.readInt();
+                    lists[i] = new int[levels[i] + 1][];
+                    for (int l = 0; l <= levels[i]; l++) {
+                        int size = in.readInt();
+                        lists[i][l] = new int[size];
+                        for (int j = 0; j < size; j++) {
+                            lists[i][l][j] = in.readInt();
+                        }
+                    }
+                }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                return "ERRO";
+                HnswIndex index = new HnswIndex(gallery, m, efConstruction, efSearch, levels);
+                for (int i = 0; i < count; i++) {
+                    for (int l = 0; l <= levels[i]; l++) {
+                        index.setLinks(i, l, lists[i][l], lists[i][l].length);
+                    }
+                }
+                index.entryPoint = entryPoint;
+                index.maxLevel = maxLevel;
+                return index;
             }
         }
 
-        private BufferedImage resizeImage(BufferedImage original, int width, int height) {
-            BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-            Graphics2D g = resized.createGraphics();
-            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g.drawImage(original, 0, 0, width, height, null);
-            g.dispose();
-            return resized;
+        public int getEfSearch() { return efSearch; }
+
+        @Override
+        public List<Match> search(double[] query, int k) {
+            double[] q = gallery.normalizedQuery(query);
+            int ep = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                ep = greedyClosest(q, ep, l);
+            }
+            Candidates found = searchLayer(q, ep, Math.max(efSearch, k), 0);
+
+            TopK top = new TopK(Math.min(k, found.size));
+            for (int i = 0; i < found.size; i++) {
+                top.offer(found.ids[i], found.sims[i]);
+            }
+            return top.toMatches(gallery);
         }
 
-        private INDArray imageToINDArray(BufferedImage img) {
-            int w = img.getWidth();
-            int h = img.getHeight();
-            INDArray arr = Nd4j.create(1, h, w, 3);
+        private void insert(int node, double[] q) {
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = levels[node];
+                return;
+            }
 
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    int rgb = img.getRGB(x, y);
-                    int r = (rgb >> 16) & 0xFF;
-                    int g = (rgb >> 8) & 0xFF;
-                    int b = rgb & 0xFF;
+            int ep = entryPoint;
+            for (int l = maxLevel; l > levels[node]; l--) {
+                ep = greedyClosest(q, ep, l);
+            }
+            for (int l = Math.min(levels[node], maxLevel); l >= 0; l--) {
+                Candidates candidates = searchLayer(q, ep, efConstruction, l);
+                int[] selected = selectNeighbors(candidates.ids, candidates.sims, candidates.size, maxLinks(l));
+                setLinks(node, l, selected, selected.length);
+                for (int neighbor : selected) {
+                    addLink(neighbor, node, l);
+                }
+                ep = candidates.ids[0];
+            }
+            if (levels[node] > maxLevel) {
+                maxLevel = levels[node];
+                entryPoint = node;
+            }
+        }
 
-                    arr.putScalar(0, y, x, 0, r / 255.0);
-                    arr.putScalar(0, y, x, 1, g / 255.0);
-                    arr.putScalar(0, y, x, 2, b / 255.0);
+        private int maxLinks(int level) {
+            return level == 0 ? maxM0 : m;
+        }
+
+        private void setLinks(int node, int level, int[] neighbors, int count) {
+            int[] list = links[node][level];
+            list[0] = count;
+            System.arraycopy(neighbors, 0, list, 1, count);
+        }
+
+        private void addLink(int node, int newNeighbor, int level) {
+            int[] list = links[node][level];
+            int count = list[0];
+            if (count < list.length - 1) {
+                list[++list[0]] = newNeighbor;
+                return;
+            }
+
+            // lista cheia: reavalia os vizinhos atuais + o novo pela heurística de seleção
+            int[] ids = new int[count + 1];
+            double[] sims = new double[count + 1];
+            System.arraycopy(list, 1, ids, 0, count);
+            ids[count] = newNeighbor;
+            for (int i = 0; i <= count; i++) {
+                sims[i] = gallery.dot(node, ids[i]);
+            }
+            sortDescending(ids, sims, count + 1);
+            int[] selected = selectNeighbors(ids, sims, count + 1, maxLinks(level));
+            setLinks(node, level, selected, selected.length);
+        }
+
+        /**
+         * Heurística do artigo do HNSW: um candidato só entra se estiver mais próximo da base
+         * do que de qualquer vizinho já escolhido; as vagas restantes são completadas com os
+         * descartados, em ordem de similaridade. Espera candidatos ordenados do mais similar.
+         */
+        private int[] selectNeighbors(int[] ids, double[] sims, int size, int max) {
+            int[] selected = new int[Math.min(size, max)];
+            boolean[] taken = new boolean[size];
+            int count = 0;
+            for (int i = 0; i < size && count < selected.length; i++) {
+                boolean keep = true;
+                for (int j = 0; j < count; j++) {
+                    if (gallery.dot(ids[i], selected[j]) > sims[i]) {
+                        keep = false;
+                        break;
+                    }
+                }
+                if (keep) {
+                    selected[count++] = ids[i];
+                    taken[i] = true;
                 }
             }
-            return arr;
+            for (int i = 0; i < size && count < selected.length; i++) {
+                if (!taken[i]) selected[count++] = ids[i];
+            }
+            return selected;
+        }
+
+        private int greedyClosest(double[] q, int ep, int level) {
+            double best = gallery.dot(ep, q);
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] list = links[ep][level];
+                for (int j = 1; j <= list[0]; j++) {
+                    double sim = gallery.dot(list[j], q);
+                    if (sim > best) {
+                        best = sim;
+                        ep = list[j];
+                        changed = true;
+                    }
+                }
+            }
+            return ep;
+        }
+
+        private Candidates searchLayer(double[] q, int ep, int ef, int level) {
+            Scratch s = scratch.get();
+            int stamp = s.nextStamp();
+            ScoreHeap candidates = s.candidates;
+            ScoreHeap results = s.results;
+            candidates.clear();
+            results.clear();
+
+            double epSim = gallery.dot(ep, q);
+            s.visited[ep] = stamp;
+            candidates.push(ep, epSim);
+            results.push(ep, epSim);
+
+            while (candidates.size() > 0) {
+                double sim = candidates.topScore();
+                int current = candidates.pop();
+                if (results.size() >= ef && sim < results.topScore()) {
+                    break;
+                }
+                int[] list = links[current][level];
+                for (int j = 1; j <= list[0]; j++) {
+                    int neighbor = list[j];
+                    if (s.visited[neighbor] == stamp) continue;
+                    s.visited[neighbor] = stamp;
+
+                    double neighborSim = gallery.dot(neighbor, q);
+                    if (results.size() < ef || neighborSim > results.topScore()) {
+                        candidates.push(neighbor, neighborSim);
+                        results.push(neighbor, neighborSim);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+
+            Candidates out = new Candidates(results.size());
+            for (int i = out.size - 1; i >= 0; i--) {
+                out.sims[i] = results.topScore();
+                out.ids[i] = results.pop();
+            }
+            return out;
         }
 
-        private double cosineSimilarity(double[] a, double[] b) {
-            double dot = 0, normA = 0, normB = 0;
-            for (int i = 0; i < a.length; i++) {
-                dot += a[i] * b[i];
-                normA += a[i] * a[i];
-                normB += b[i] * b[i];
+        private static void sortDescending(int[] ids, double[] sims, int size) {
+            for (int i = 1; i < size; i++) {
+                int id = ids[i];
+                double sim = sims[i];
+                int j = i - 1;
+                while (j >= 0 && sims[j] < sim) {
+                    ids[j + 1] = ids[j];
+                    sims[j + 1] = sims[j];
+                    j--;
+                }
+                ids[j + 1] = id;
+                sims[j + 1] = sim;
             }
-            return dot / (Math.sqrt(normA) * Math.sqrt(normB));
         }
+
+        /** Resultado de uma busca em camada, ordenado do mais para o menos similar. */
+        private static class Candidates {
+            final int[] ids;
+            final double[] sims;
+            final int size;
+
+            Candidates(int size) {
+                this.ids = new int[size];
+                this.sims = new double[size];
+                this.size = size;
+            }
+        }
+
+        /** Estado reaproveitado entre buscas de uma mesma thread. */
+        private static class Scratch {
+            final int[] visited;
+            final ScoreHeap candidates = new ScoreHeap(true);
+            final ScoreHeap results = new ScoreHeap(false);
+            int stamp;
+
+            Scratch(int size) {
+                this.visited = new int[size];
+            }
+
+            int nextStamp() {
+                if (++stamp == Integer.MAX_VALUE) {
+                    Arrays.fill(visited, 0);
+                    stamp = 1;
+                }
+                return stamp;
+            }
+        }
+    }
+
+    /** Heap binário de (id, score) em arrays primitivos; max-heap ou min-heap. */
+    static class ScoreHeap {
+        private final boolean max;
+        private int[] ids = new int[64];
+        private double[] scores = new double[64];
+        private int size;
+
+        ScoreHeap(boolean max) {
+            this.max = max;
+        }
+
+        int size() { return size; }
+        void clear() { size = 0; }
+        double topScore() { return scores[0]; }
+
+        void push(int id, double score) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, scores[parent])) break;
+                ids[i] = ids[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            scores[i] = score;
+        }
+
+        int pop() {
+            int top = ids[0];
+            int lastId = ids[--size];
+            double lastScore = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && before(scores[child + 1], scores[child])) child++;
+                if (!before(scores[child], lastScore)) break;
+                ids[i] = ids[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            ids[i] = lastId;
+            scores[i] = lastScore;
+            return top;
+        }
+
+        private boolean before(double a, double b) {
+            return max ? a > b : a < b;
+        }
+    }
+
+    /** Mantém os k maiores scores vistos, ordenados (k é pequeno). */
+    static class TopK {
+        private final int[] ids;
+        private final double[] scores;
+        private int size;
+
+        TopK(int k) {
+            this.ids = new int[k];
+            this.scores = new double[k];
+        }
+
+        void offer(int id, double score) {
+            int k = ids.length;
+            if (k == 0 || (size == k && score <= scores[k - 1])) return;
+            int pos = size < k ? size++ : k - 1;
+            while (pos > 0 && scores[pos - 1] < score) {
+                ids[pos] = ids[pos - 1];
+                scores[pos] = scores[pos - 1];
+                pos--;
+            }
+            ids[pos] = id;
+            scores[pos] = score;
+        }
+
+        int size() { return size; }
+        int id(int i) { return ids[i]; }
+
+        List<Match> toMatches(Gallery gallery) {
+            List<Match> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(new Match(ids[i], gallery.label(ids[i]), scores[i]));
+            }
+            return result;
+        }
+    }
+
+    public static class Match {
+        private final int index;
+        private final String label;
+        private final double score;
+
+        public Match(int index, String label, double score) {
+            this.index = index;
+            this.label = label;
+            this.score = score;
+        }
+
+        public int getIndex() { return index; }
+        public String getLabel() { return label; }
+        public double getScore() { return score; }
     }
 }
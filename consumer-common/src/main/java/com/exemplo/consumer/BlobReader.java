@@ -0,0 +1,57 @@
+package com.exemplo.consumer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Leitor do armazém de imagens do claim-check ({@code <raiz>/<2 primeiros hex>/<sha-256>}).
+ * Os arquivos são mapeados em memória e lidos direto do page cache, sem cópia para o heap;
+ * os {@code capacity} mapeamentos usados mais recentemente ficam abertos em um LRU.
+ */
+class BlobReader {
+    private final Path root;
+    private final Map<String, ByteBuffer> mapped;
+
+    BlobReader(Path root, int capacity) {
+        this.root = root;
+        this.mapped = new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ByteBuffer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Visão somente leitura do blob; cada chamada devolve um buffer independente. */
+    ByteBuffer read(String hash, int expectedSize) throws IOException {
+        if (hash.length() != 64 || !hash.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            throw new IOException("Hash de imagem inválido: " + hash);
+        }
+        ByteBuffer buffer;
+        synchronized (mapped) {
+            buffer = mapped.get(hash);
+        }
+        if (buffer == null) {
+            Path path = root.resolve(hash.substring(0, 2)).resolve(hash);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (NoSuchFileException e) {
+                throw new IOException("Imagem não encontrada no armazém: " + path);
+            }
+            synchronized (mapped) {
+                mapped.put(hash, buffer);
+            }
+        }
+        if (expectedSize >= 0 && buffer.capacity() != expectedSize) {
+            throw new IOException("Tamanho do blob " + hash + " difere do anunciado: "
+                    + buffer.capacity() + " != " + expectedSize);
+        }
+        return buffer.duplicate();
+    }
+}
@@ -0,0 +1,685 @@
+package com.exemplo.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DeliverCallback;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Pipeline comum aos consumidores de imagens (rosto e brasao): conexão e filas, workers em
+ * estágios com lote, cache de predições, prefetch adaptativo, publicação dos resultados com
+ * confirms e /metrics. Cada serviço estende esta classe só com o modelo ({@link #replica},
+ * {@link #preprocess}) e a forma de apresentar o resultado {@code R}.
+ */
+public abstract class ImageConsumer<R> {
+
+    private static final int BATCH_SIZE = Integer.parseInt(System.getenv().getOrDefault("BATCH_SIZE", "1"));
+    private static final long BATCH_MAX_WAIT_MS = Long.parseLong(System.getenv().getOrDefault("BATCH_MAX_WAIT_MS", "50"));
+    private static final int PREFETCH = Integer.parseInt(System.getenv().getOrDefault("PREFETCH", String.valueOf(2 * BATCH_SIZE)));
+    private static final boolean ADAPTIVE_PREFETCH = Boolean.parseBoolean(System.getenv().getOrDefault("ADAPTIVE_PREFETCH", "true"));
+    private static final int PREFETCH_MAX = Integer.parseInt(System.getenv().getOrDefault("PREFETCH_MAX",
+            String.valueOf(Math.max(16, 4 * BATCH_SIZE))));
+    private static final long PREFETCH_ADJUST_MS = Long.parseLong(System.getenv().getOrDefault("PREFETCH_ADJUST_MS", "1000"));
+    private static final int DECODE_THREADS = Integer.parseInt(System.getenv().getOrDefault("DECODE_THREADS",
+            String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))));
+    private static final int WORKERS = Integer.parseInt(System.getenv().getOrDefault("WORKERS", "1"));
+    private static final int CACHE_SIZE = Integer.parseInt(System.getenv().getOrDefault("CACHE_SIZE", "10000"));
+    private static final long CACHE_TTL_MS = Long.parseLong(System.getenv().getOrDefault("CACHE_TTL_MS", "0"));
+    private static final int CACHE_STATS_EVERY = 1000;
+    private static final String BLOB_DIR = System.getenv().getOrDefault("BLOB_DIR", "/app/blobs");
+    private static final int BLOB_CACHE_SIZE = Integer.parseInt(System.getenv().getOrDefault("BLOB_CACHE_SIZE", "256"));
+    private static final String RESULTS_EXCHANGE = System.getenv().getOrDefault("RESULTS_EXCHANGE", "image_results_exchange");
+    private static final boolean PUBLISH_RESULTS = Boolean.parseBoolean(System.getenv().getOrDefault("PUBLISH_RESULTS", "true"));
+    private static final String EXCHANGE_NAME = "image_analysis_exchange";
+    private static final int SHARDS = Integer.parseInt(System.getenv().getOrDefault("SHARDS", "0"));
+    private static final int WARMUP_ITERATIONS = Integer.parseInt(System.getenv().getOrDefault("WARMUP_ITERATIONS", "3"));
+    private static final int METRICS_PORT = Integer.parseInt(System.getenv().getOrDefault("METRICS_PORT", "8000"));
+
+    public static final Metrics METRICS = new Metrics();
+    static final LatencyHistogram DECODE_LATENCY = METRICS.stage("decode");
+    static final LatencyHistogram BLOB_LATENCY = METRICS.stage("blob_read");
+    public static final LatencyHistogram IMAGE_READ_LATENCY = METRICS.stage("image_read");
+    public static final LatencyHistogram RESIZE_LATENCY = METRICS.stage("resize");
+    public static final LatencyHistogram TENSOR_LATENCY = METRICS.stage("tensor");
+    public static final LatencyHistogram INFERENCE_LATENCY = METRICS.stage("inference");
+    static final LatencyHistogram ACK_LATENCY = METRICS.stage("ack");
+    static final LatencyHistogram CONFIRM_LATENCY = METRICS.stage("confirm");
+    static final LongAdder DECODE_FALLBACKS = METRICS.counter("consumer_decode_fallbacks_total",
+            "Imagens decodificadas pelo ImageIO.read completo por falta de suporte à leitura reduzida.");
+
+    /** Réplica do modelo de um worker; só a thread do lote daquele worker a usa. */
+    public interface Replica<R> {
+        List<R> infer(List<byte[]> pixels);
+
+        /** Inferências descartáveis antes do consumo, só para aquecer JIT e workspaces. */
+        void warmUp(List<ByteBuffer> images);
+    }
+
+    private final String consumerName;
+    private final String queueName;
+    private final String routingKey;
+    private final String consumerId;
+    private final int warmupWidth;
+    private final int warmupHeight;
+    private Connection connection;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong messagesProcessed = new AtomicLong(0);
+    private final List<Worker> workers = new ArrayList<>();
+    private ThreadPoolExecutor decodePool;
+    private ScheduledExecutorService prefetchTuner;
+    private final LongAdder messagesReceived = METRICS.counter("consumer_messages_received_total", "Mensagens entregues pelo broker.");
+    private final LongAdder messagesRejected = METRICS.counter("consumer_messages_rejected_total", "Mensagens inválidas descartadas com nack.");
+    private final LongAdder batchesProcessed = METRICS.counter("consumer_batches_total", "Lotes inferidos.");
+    private final LongAdder resultsPublished = METRICS.counter("consumer_results_published_total", "Resultados publicados no exchange de resultados.");
+    private final LongAdder resultsNacked = METRICS.counter("consumer_results_nacked_total", "Resultados recusados pelo broker (nack do confirm); as entradas voltam à fila.");
+    private final BlobReader blobs = new BlobReader(Paths.get(BLOB_DIR), BLOB_CACHE_SIZE);
+    private final PredictionCache<R> cache = new PredictionCache<>(CACHE_SIZE, CACHE_TTL_MS);
+
+    /**
+     * @param consumerName nome do serviço nos resultados e id padrão da réplica (sem HOSTNAME)
+     * @param type tipo das mensagens consumidas: fila {@code <type>_queue}, chave {@code <type>}
+     *             das entradas e dos resultados
+     * @param warmupWidth largura da imagem sintética do aquecimento
+     * @param warmupHeight altura da imagem sintética do aquecimento
+     */
+    protected ImageConsumer(String consumerName, String type, int warmupWidth, int warmupHeight) {
+        this.consumerName = consumerName;
+        this.queueName = type + "_queue";
+        this.routingKey = type;
+        this.consumerId = System.getenv().getOrDefault("CONSUMER_ID",
+                System.getenv().getOrDefault("HOSTNAME", consumerName));
+        this.warmupWidth = warmupWidth;
+        this.warmupHeight = warmupHeight;
+    }
+
+    /** Réplica do modelo para o worker {@code index}; o worker 0 pode usar o próprio modelo carregado. */
+    protected abstract Replica<R> replica(int index);
+
+    /** Decode e redimensionamento da imagem no estágio de decode, fora da thread do lote. */
+    protected abstract byte[] preprocess(ByteBuffer image) throws IOException;
+
+    /** Se o resultado pode ir para o cache (resultados de erro não vão). */
+    protected abstract boolean cacheable(R result);
+
+    protected abstract String label(R result);
+
+    protected abstract double confidence(R result);
+
+    /** Resultado formatado para a linha de log de cada mensagem processada. */
+    protected abstract String describe(R result);
+
+    /**
+     * Sobe {@code /metrics} antes de carregar o modelo (para {@code /ready} responder 503 durante
+     * a carga), cria o consumidor e consome até a JVM terminar.
+     */
+    public static void run(Supplier<? extends ImageConsumer<?>> factory) {
+        if (METRICS_PORT > 0) {
+            try {
+                METRICS.serve(METRICS_PORT);
+                System.out.println("Métricas em http://0.0.0.0:" + METRICS_PORT + "/metrics (prontidão em /ready)");
+            } catch (IOException e) {
+                System.err.println("Não foi possível abrir a porta de métricas: " + e.getMessage());
+            }
+        }
+        ImageConsumer<?> consumer = factory.get();
+        Runtime.getRuntime().addShutdownHook(new Thread(consumer::close));
+
+        try {
+            consumer.connectRabbitMQ();
+            consumer.startConsuming();
+
+            while (true) {
+                Thread.sleep(1000);
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void connectRabbitMQ() throws IOException, TimeoutException {
+        String host = System.getenv("RABBITMQ_HOST");
+        String user = System.getenv("RABBITMQ_USER");
+        String pass = System.getenv("RABBITMQ_PASS");
+
+        if (host == null || user == null || pass == null) {
+            throw new IllegalStateException("Variáveis de ambiente do RabbitMQ não definidas");
+        }
+
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(host);
+        factory.setUsername(user);
+        factory.setPassword(pass);
+        connectRabbitMQ(factory);
+    }
+
+    /** Conecta pela fábrica dada (o harness de ponta a ponta passa um broker em memória) e declara as filas. */
+    public void connectRabbitMQ(ConnectionFactory factory) throws IOException, TimeoutException {
+        connection = factory.newConnection();
+        try (Channel channel = connection.createChannel()) {
+            if (SHARDS > 0) {
+                // declara e liga os shards também aqui, para não depender da ordem de subida do gerador
+                channel.exchangeDeclare(EXCHANGE_NAME, BuiltinExchangeType.TOPIC, true);
+                for (int shard = 0; shard < SHARDS; shard++) {
+                    channel.queueDeclare(Sharding.queue(queueName, shard), true, false, false, null);
+                    channel.queueBind(Sharding.queue(queueName, shard), EXCHANGE_NAME, routingKey + "." + shard);
+                }
+            } else {
+                channel.queueDeclare(queueName, true, false, false, null);
+            }
+            if (PUBLISH_RESULTS) {
+                channel.exchangeDeclare(RESULTS_EXCHANGE, BuiltinExchangeType.TOPIC, true);
+            }
+        }
+        System.out.println("Conectado ao RabbitMQ em " + factory.getHost());
+    }
+
+    /**
+     * Inicia {@code WORKERS} consumidores, cada um com seu próprio channel, lote e réplica do
+     * modelo (o modelo do DL4J não pode ser compartilhado entre threads). Cada réplica é aquecida
+     * antes do basicConsume, então a primeira mensagem real já encontra o JIT e os workspaces
+     * do ND4J prontos; só então {@code /ready} passa a responder 200.
+     */
+    public void startConsuming() throws IOException {
+        registerGauges();
+        // a fila nunca passa do prefetch somado dos channels; o CallerRunsPolicy é só uma garantia
+        decodePool = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxPrefetch() * WORKERS)), new ThreadPoolExecutor.CallerRunsPolicy());
+        for (int i = 0; i < WORKERS; i++) {
+            workers.add(new Worker(connection.createChannel(), replica(i)));
+        }
+        warmUp();
+        for (Worker worker : workers) {
+            worker.start();
+        }
+        if (ADAPTIVE_PREFETCH) {
+            prefetchTuner = Executors.newSingleThreadScheduledExecutor();
+            prefetchTuner.scheduleWithFixedDelay(() -> workers.forEach(Worker::adjustPrefetch),
+                    PREFETCH_ADJUST_MS, PREFETCH_ADJUST_MS, TimeUnit.MILLISECONDS);
+        }
+        METRICS.markReady();
+        System.out.printf("Pronto em %.1f s desde o início da JVM%n", METRICS.startupSeconds());
+        System.out.printf("Consumindo %s com %d worker(s) e %d thread(s) de decode em lotes de até %d (espera máx. %d ms, prefetch %s)%n",
+                SHARDS > 0 ? queueName + ".0-" + (SHARDS - 1) : queueName, WORKERS, DECODE_THREADS, BATCH_SIZE,
+                BATCH_MAX_WAIT_MS, ADAPTIVE_PREFETCH ? PREFETCH + " adaptativo até " + maxPrefetch() : PREFETCH);
+        if (SHARDS > 0) {
+            System.out.println("Réplica " + consumerId + " preferida nos shards (maior prioridade HRW primeiro): "
+                    + Sharding.describe(consumerId, SHARDS));
+        }
+    }
+
+    private static int maxPrefetch() {
+        return ADAPTIVE_PREFETCH ? Math.max(PREFETCH, Math.max(PREFETCH_MAX, BATCH_SIZE)) : PREFETCH;
+    }
+
+    /**
+     * Roda {@code WARMUP_ITERATIONS} lotes sintéticos de {@code BATCH_SIZE} imagens em cada worker,
+     * na própria thread do lote (os workspaces do ND4J são por thread), e descarta as latências
+     * registradas para não poluir os histogramas de /metrics.
+     */
+    private void warmUp() throws IOException {
+        if (WARMUP_ITERATIONS <= 0) return;
+        long start = System.nanoTime();
+        List<ByteBuffer> batch = Collections.nCopies(Math.max(1, BATCH_SIZE), warmupImage(warmupWidth, warmupHeight));
+        List<Future<?>> runs = new ArrayList<>(workers.size());
+        for (Worker worker : workers) {
+            runs.add(worker.warmUp(batch));
+        }
+        try {
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Aquecimento interrompido", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Falha no aquecimento do modelo", e.getCause());
+        }
+        METRICS.resetStages();
+        System.out.printf("Aquecimento: %d lote(s) de %d por worker em %d ms%n",
+                WARMUP_ITERATIONS, batch.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** JPEG colorido com gradiente e ruído, para exercitar o mesmo caminho de decode das mensagens. */
+    static ByteBuffer warmupImage(int width, int height) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width, g = y * 255 / height, b = random.nextInt(256);
+                img.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpg", out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private void registerGauges() {
+        METRICS.register("consumer_messages_processed_total", "counter", "Mensagens processadas e confirmadas.", messagesProcessed::get);
+        METRICS.register("consumer_messages_unacked", "gauge", "Mensagens recebidas ainda não confirmadas.",
+                () -> messagesReceived.sum() - messagesProcessed.get() - messagesRejected.sum());
+        METRICS.register("consumer_decode_pending", "gauge", "Mensagens na fila ou em execução no estágio de decode.",
+                () -> decodePool == null ? 0 : decodePool.getQueue().size() + decodePool.getActiveCount());
+        METRICS.register("consumer_batcher_pending", "gauge", "Mensagens aguardando formar lote, somando os workers.",
+                () -> workers.stream().mapToInt(Worker::pending).sum());
+        METRICS.register("consumer_prefetch", "gauge", "Prefetch em vigor, somando os channels dos workers.",
+                () -> workers.stream().mapToInt(Worker::prefetch).sum());
+        METRICS.register("consumer_queue_messages", "gauge", "Mensagens prontas na fila do broker.", () -> {
+            try (Channel channel = connection.createChannel()) {
+                long count = 0;
+                for (String queue : Sharding.queues(queueName, SHARDS)) {
+                    count += channel.messageCount(queue);
+                }
+                return count;
+            } catch (IOException | TimeoutException e) {
+                return Double.NaN;
+            }
+        });
+        METRICS.register("consumer_results_unconfirmed", "gauge", "Resultados publicados aguardando confirm do broker.",
+                () -> workers.stream().mapToInt(Worker::unconfirmed).sum());
+        METRICS.register("consumer_cache_entries", "gauge", "Predições no cache.", cache::size);
+        METRICS.register("consumer_cache_hits_total", "counter", "Acertos do cache de predições.", cache::getHits);
+        METRICS.register("consumer_cache_misses_total", "counter", "Falhas do cache de predições.", cache::getMisses);
+        METRICS.register("consumer_cache_evictions_total", "counter", "Remoções do cache de predições.", cache::getEvictions);
+    }
+
+    /**
+     * Consumidor em estágios: o decode da mensagem e da imagem roda no {@code decodePool}
+     * compartilhado, a inferência em lote na thread do {@link MicroBatcher} (uma por réplica do
+     * modelo) e a publicação do resultado e o ack em uma thread própria do worker. As filas entre
+     * os estágios não passam de {@code PREFETCH} itens, porque o broker não entrega mais que isso
+     * sem ack no channel; é o prefetch que segura o consumo quando algum estágio atrasa.
+     */
+    private class Worker {
+        private final Channel channel;
+        private final Replica<R> replica;
+        private final MicroBatcher<Prepared<R>> batcher;
+        private final ExecutorService ackStage = Executors.newSingleThreadExecutor();
+        // entregas ainda em algum estágio, confirms pendentes dos resultados (seq do publish ->
+        // delivery tag da entrada, e os mesmos tags ordenados, já que os estágios terminam fora de
+        // ordem) e as entradas concluídas ainda sem ack; guardados pelo monitor do worker
+        private final TreeSet<Long> inFlight = new TreeSet<>();
+        private final TreeMap<Long, Long> unconfirmed = new TreeMap<>();
+        private final TreeSet<Long> unconfirmedTags = new TreeSet<>();
+        private final TreeSet<Long> unackedTags = new TreeSet<>();
+        // entregas ainda sem ack/nack no broker e o confirm cronometrado no momento (-1 = nenhum);
+        // também guardados pelo monitor do worker
+        private final PrefetchController prefetch = new PrefetchController(PREFETCH, BATCH_SIZE, maxPrefetch());
+        private int outstanding;
+        private long confirmSampleSeq = -1;
+        private long confirmSampleStart;
+
+        Worker(Channel channel, Replica<R> replica) {
+            this.channel = channel;
+            this.replica = replica;
+            this.batcher = new MicroBatcher<>(BATCH_SIZE, BATCH_MAX_WAIT_MS, this::processBatch);
+        }
+
+        /** Inferências descartáveis na thread do lote, antes de qualquer entrega do broker. */
+        Future<?> warmUp(List<ByteBuffer> images) {
+            return batcher.submit(() -> {
+                for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                    replica.warmUp(images);
+                }
+            });
+        }
+
+        /**
+         * Com SHARDS, consome todas as filas de shard com a prioridade HRW desta réplica em cada
+         * uma. O prefetch é sempre do channel inteiro (global): o por consumidor só vale para os
+         * basicConsume seguintes, e o ajuste adaptativo precisa valer para o consumo em curso.
+         */
+        void start() throws IOException {
+            channel.basicQos(prefetch.current(), true);
+            if (PUBLISH_RESULTS) {
+                channel.confirmSelect();
+                channel.addConfirmListener((seq, multiple) -> confirmed(seq, multiple, true),
+                        (seq, multiple) -> confirmed(seq, multiple, false));
+            }
+            DeliverCallback onDelivery = (consumerTag, delivery) -> {
+                messagesReceived.increment();
+                Received received = new Received(delivery, System.nanoTime());
+                synchronized (this) {
+                    inFlight.add(delivery.getEnvelope().getDeliveryTag());
+                    outstanding++;
+                }
+                prefetch.delivered(received.receivedAt);
+                decodePool.execute(() -> prepare(received));
+            };
+            if (SHARDS <= 0) {
+                channel.basicConsume(queueName, false, onDelivery, consumerTag -> {});
+                return;
+            }
+            for (int shard = 0; shard < SHARDS; shard++) {
+                Map<String, Object> args = Collections.singletonMap("x-priority", Sharding.priority(consumerId, shard));
+                channel.basicConsume(Sharding.queue(queueName, shard), false, args, onDelivery, consumerTag -> {});
+            }
+        }
+
+        synchronized int unconfirmed() {
+            return unconfirmed.size();
+        }
+
+        int pending() {
+            return batcher.pendingSize();
+        }
+
+        int prefetch() {
+            return prefetch.current();
+        }
+
+        /** Reaplica o prefetch no channel quando o alvo calculado pelo controlador mudou o bastante. */
+        void adjustPrefetch() {
+            int previous = prefetch.current();
+            int next = prefetch.adjust();
+            if (next < 0 || !channel.isOpen()) return;
+            try {
+                channel.basicQos(next, true);
+                System.out.println("Prefetch ajustado de " + previous + " para " + next + " (" + prefetch + ")");
+            } catch (IOException e) {
+                System.err.println("Erro ao ajustar o prefetch: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Estágio de decode (no {@code decodePool}): desserializa, resolve a imagem, consulta o
+         * cache e, se preciso, decodifica e redimensiona. Acertos do cache vão direto ao estágio
+         * de ack, sem passar pelo lote.
+         */
+        private void prepare(Received received) {
+            long start = System.nanoTime();
+            ImageMessage msg;
+            ByteBuffer image;
+            try {
+                msg = MessageCodec.decode(objectMapper, received.delivery);
+                DECODE_LATENCY.recordSince(start);
+                image = image(msg);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Mensagem inválida descartada: " + e.getMessage());
+                ackStage.execute(() -> reject(received.delivery.getEnvelope().getDeliveryTag()));
+                return;
+            }
+
+            Prepared<R> item = new Prepared<>(received, msg);
+            if (cache.isEnabled()) {
+                item.key = XxHash64.hash(image);
+                item.result = cache.get(item.key);
+            }
+            if (item.result == null) {
+                try {
+                    item.pixels = preprocess(image);
+                } catch (Exception e) {
+                    // segue sem pixels: a inferência devolve o resultado de erro para a mensagem
+                    e.printStackTrace();
+                }
+            }
+            item.decodeNanos = System.nanoTime() - start;
+            prefetch.recordDecode(item.decodeNanos);
+            if (item.result != null) {
+                long now = System.nanoTime();
+                ackStage.execute(() -> complete(Collections.singletonList(item), now, 0));
+            } else {
+                batcher.add(item);
+            }
+        }
+
+        /** Estágio de inferência: uma única chamada ao modelo para o lote já decodificado. */
+        private void processBatch(List<Prepared<R>> items) {
+            long batchStart = System.nanoTime();
+            try {
+                List<byte[]> pixels = new ArrayList<>(items.size());
+                for (Prepared<R> item : items) {
+                    pixels.add(item.pixels);
+                }
+                List<R> results = replica.infer(pixels);
+                long analyzeNanos = System.nanoTime() - batchStart;
+                prefetch.recordInference(analyzeNanos);
+                for (int i = 0; i < items.size(); i++) {
+                    Prepared<R> item = items.get(i);
+                    item.result = results.get(i);
+                    item.pixels = null;
+                    if (cache.isEnabled() && cacheable(item.result)) {
+                        cache.put(item.key, item.result);
+                    }
+                }
+                batchesProcessed.increment();
+                ackStage.execute(() -> complete(items, batchStart, analyzeNanos));
+            } catch (Exception e) {
+                System.err.println("Erro ao processar lote: " + e.getMessage());
+                e.printStackTrace();
+                // sem rejeitar, os tags ficariam em inFlight e travariam o ack múltiplo do channel
+                ackStage.execute(() -> {
+                    for (Prepared<R> item : items) {
+                        reject(item.received.delivery.getEnvelope().getDeliveryTag());
+                    }
+                });
+            }
+        }
+
+        /**
+         * Estágio de ack: publica os resultados e marca as entradas como concluídas. Com
+         * {@code PUBLISH_RESULTS} o ack só sai quando os confirms dos resultados chegarem.
+         */
+        private void complete(List<Prepared<R>> items, long batchStart, long analyzeNanos) {
+            try {
+                for (Prepared<R> item : items) {
+                    R result = item.result;
+                    if (PUBLISH_RESULTS) {
+                        try {
+                            publishResult(item, label(result), confidence(result), batchStart, analyzeNanos);
+                        } catch (IOException | RuntimeException e) {
+                            // a entrada já foi rejeitada; segue com o restante do lote
+                            System.err.println("Erro ao publicar resultado: " + e.getMessage());
+                            continue;
+                        }
+                    } else {
+                        done(item.received.delivery.getEnvelope().getDeliveryTag());
+                    }
+                    long count = messagesProcessed.incrementAndGet();
+                    System.out.printf("[%s] %s | Total processadas: %d\n",
+                            item.message.getFileName(), describe(result), count);
+                    if (cache.isEnabled() && count % CACHE_STATS_EVERY == 0) {
+                        System.out.println(cache.stats());
+                    }
+                }
+                ackCompleted();
+            } catch (Exception e) {
+                System.err.println("Erro ao confirmar lote: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Publica o resultado sem esperar o confirm; a mensagem de entrada só é confirmada ao
+         * broker depois que o resultado correspondente for confirmado (ver {@link #confirmed}).
+         */
+        private void publishResult(Prepared<R> item, String label, double confidence,
+                                   long batchStart, long analyzeNanos) throws IOException {
+            long now = System.nanoTime();
+            Received received = item.received;
+            Map<String, Double> stages = new LinkedHashMap<>();
+            stages.put("espera_lote", Math.max(0, batchStart - received.receivedAt - item.decodeNanos) / 1e6);
+            stages.put("decode", item.decodeNanos / 1e6);
+            stages.put("analise_lote", analyzeNanos / 1e6);
+            stages.put("servico", (now - received.receivedAt) / 1e6);
+            ImageMessage msg = item.message;
+            ResultMessage result = new ResultMessage(msg.getId(), msg.getType(), label, confidence,
+                    msg.getTimestamp(), consumerName, stages);
+
+            AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                    .contentType("application/json")
+                    .deliveryMode(2)
+                    .build();
+            byte[] body = objectMapper.writeValueAsBytes(result);
+            long tag = received.delivery.getEnvelope().getDeliveryTag();
+            // registra antes do publish porque o confirm pode chegar antes de basicPublish retornar
+            long seq;
+            synchronized (this) {
+                seq = channel.getNextPublishSeqNo();
+                if (confirmSampleSeq < 0) {
+                    confirmSampleSeq = seq;
+                    confirmSampleStart = now;
+                }
+                unconfirmed.put(seq, tag);
+                unconfirmedTags.add(tag);
+                done(tag);
+            }
+            try {
+                channel.basicPublish(RESULTS_EXCHANGE, routingKey, props, body);
+            } catch (IOException | RuntimeException e) {
+                // nenhum confirm virá para este seq: desfaz o registro e rejeita a entrada
+                synchronized (this) {
+                    unconfirmed.remove(seq);
+                    unconfirmedTags.remove(tag);
+                    unackedTags.remove(tag);
+                    if (confirmSampleSeq == seq) confirmSampleSeq = -1;
+                    reject(tag);
+                }
+                throw e;
+            }
+            resultsPublished.increment();
+        }
+
+        private synchronized void done(long tag) {
+            inFlight.remove(tag);
+            unackedTags.add(tag);
+        }
+
+        private synchronized void reject(long tag) {
+            try {
+                channel.basicNack(tag, false, false);
+                messagesRejected.increment();
+                inFlight.remove(tag);
+                outstanding--;
+                ackCompleted();
+            } catch (IOException e) {
+                System.err.println("Erro ao rejeitar mensagem: " + e.getMessage());
+            }
+        }
+
+        private synchronized void confirmed(long seq, boolean multiple, boolean ack) throws IOException {
+            List<Long> tags;
+            if (multiple) {
+                Map<Long, Long> head = unconfirmed.headMap(seq, true);
+                tags = new ArrayList<>(head.values());
+                head.clear();
+            } else {
+                Long tag = unconfirmed.remove(seq);
+                tags = tag != null ? Collections.singletonList(tag) : Collections.emptyList();
+            }
+            unconfirmedTags.removeAll(tags);
+            if (confirmSampleSeq >= 0 && (multiple ? confirmSampleSeq <= seq : confirmSampleSeq == seq)) {
+                long nanos = System.nanoTime() - confirmSampleStart;
+                CONFIRM_LATENCY.record(nanos);
+                prefetch.recordConfirm(nanos);
+                confirmSampleSeq = -1;
+            }
+            if (!ack) {
+                // o resultado se perdeu: devolve a entrada à fila em vez de confirmá-la
+                resultsNacked.add(tags.size());
+                System.err.println("Broker recusou " + tags.size() + " resultado(s); entradas devolvidas à fila");
+                for (long tag : tags) {
+                    unackedTags.remove(tag);
+                    channel.basicNack(tag, false, true);
+                    outstanding--;
+                }
+            }
+            ackCompleted();
+        }
+
+        /**
+         * Confirma, com um ack múltiplo, as entradas concluídas anteriores à mais antiga que ainda
+         * está em algum estágio ou aguardando o confirm do resultado; os estágios terminam fora de
+         * ordem, então o último tag do lote não serve. O tag usado é sempre de uma entrada pendente
+         * (nunca de uma já rejeitada com nack).
+         */
+        private synchronized void ackCompleted() throws IOException {
+            Long limit = inFlight.isEmpty() ? null : inFlight.first();
+            if (!unconfirmedTags.isEmpty() && (limit == null || unconfirmedTags.first() < limit)) {
+                limit = unconfirmedTags.first();
+            }
+            Long safeTag = limit == null
+                    ? (unackedTags.isEmpty() ? null : unackedTags.last())
+                    : unackedTags.lower(limit);
+            if (safeTag != null) {
+                boolean windowFull = outstanding >= prefetch.current();
+                ack(safeTag);
+                SortedSet<Long> acked = unackedTags.headSet(safeTag, true);
+                outstanding -= acked.size();
+                acked.clear();
+                if (windowFull) {
+                    prefetch.windowReleased(System.nanoTime());
+                }
+            }
+        }
+
+        private void ack(long tag) throws IOException {
+            long start = System.nanoTime();
+            channel.basicAck(tag, true);
+            ACK_LATENCY.recordSince(start);
+        }
+
+        /** Bytes da imagem: embutidos na mensagem ou, no claim-check, lidos do armazém pelo hash. */
+        private ByteBuffer image(ImageMessage msg) throws IOException {
+            if (msg.getImageHash() != null) {
+                long start = System.nanoTime();
+                ByteBuffer image = blobs.read(msg.getImageHash(), msg.getImageSize());
+                BLOB_LATENCY.recordSince(start);
+                return image;
+            }
+            if (msg.getImageData() == null) {
+                throw new IOException("Mensagem sem imagem nem hash de imagem");
+            }
+            return ByteBuffer.wrap(msg.getImageData());
+        }
+
+        void close() {
+            batcher.shutdown();
+            ackStage.shutdown();
+            try { if (channel.isOpen()) channel.close(); } catch (Exception ignored) {}
+        }
+    }
+
+
+    public void close() {
+        METRICS.stop();
+        if (prefetchTuner != null) prefetchTuner.shutdownNow();
+        if (decodePool != null) decodePool.shutdown();
+        for (Worker worker : workers) {
+            worker.close();
+        }
+        try { if (connection != null && connection.isOpen()) connection.close(); } catch (Exception ignored) {}
+    }
+}
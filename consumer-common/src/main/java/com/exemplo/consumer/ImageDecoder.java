@@ -0,0 +1,97 @@
+package com.exemplo.consumer;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Decodifica já perto da resolução de entrada do modelo: {@link ImageReader} com subamostragem
+ * da origem e, quando pedida a luminância, só o plano Y do JPEG, sem conversão de cor. Se o
+ * formato não permitir (ou {@code FAST_DECODE=false}), usa o {@code ImageIO.read} completo.
+ */
+public final class ImageDecoder {
+    private static final boolean FAST_DECODE = Boolean.parseBoolean(System.getenv().getOrDefault("FAST_DECODE", "true"));
+
+    private ImageDecoder() {}
+
+    public static BufferedImage decode(ByteBuffer data, int targetWidth, int targetHeight, boolean luminance) throws IOException {
+        if (FAST_DECODE) {
+            try {
+                BufferedImage img = decodeSubsampled(data, targetWidth, targetHeight, luminance);
+                if (img != null) return img;
+            } catch (IOException | RuntimeException e) {
+                // leitor sem suporte a subamostragem ou a bandas: segue pelo caminho completo
+            }
+            ImageConsumer.DECODE_FALLBACKS.increment();
+        }
+        return ImageIO.read(new ByteBufferInputStream(data));
+    }
+
+    private static BufferedImage decodeSubsampled(ByteBuffer data, int targetWidth, int targetHeight,
+                                                  boolean luminance) throws IOException {
+        try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteBufferInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, !luminance);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // o maior passo que ainda deixa a imagem com pelo menos o tamanho de destino
+                int xStep = Math.max(1, reader.getWidth(0) / targetWidth);
+                int yStep = Math.max(1, reader.getHeight(0) / targetHeight);
+                param.setSourceSubsampling(xStep, yStep, xStep / 2, yStep / 2);
+
+                if (luminance && isLumaJpeg(reader)) {
+                    // readRaster devolve os componentes crus do JPEG (Y, Cb, Cr); só o Y é copiado
+                    Raster raw = reader.readRaster(0, param);
+                    Raster y = raw.createChild(raw.getMinX(), raw.getMinY(), raw.getWidth(), raw.getHeight(),
+                            0, 0, new int[]{0});
+                    BufferedImage gray = new BufferedImage(y.getWidth(), y.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+                    gray.getRaster().setRect(y);
+                    return gray;
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * JPEG cujo primeiro componente é a luminância: tons de cinza ou YCbCr (JFIF, Adobe com
+     * transform 1, ou sem marcador e sem ids R/G/B). CMYK/YCCK e RGB cru ficam de fora.
+     */
+    private static boolean isLumaJpeg(ImageReader reader) throws IOException {
+        if (!"jpeg".equalsIgnoreCase(reader.getFormatName())) return false;
+        IIOMetadata metadata = reader.getImageMetadata(0);
+        if (metadata == null) return false;
+        Node root = metadata.getAsTree("javax_imageio_jpeg_image_1.0");
+        Element sof = firstElement(root, "sof");
+        if (sof == null) return false;
+        NodeList components = sof.getElementsByTagName("componentSpec");
+        if (components.getLength() == 1) return true;
+        if (components.getLength() != 3) return false;
+        if (firstElement(root, "app0JFIF") != null) return true;
+        Element adobe = firstElement(root, "app14Adobe");
+        if (adobe != null) return "1".equals(adobe.getAttribute("transform"));
+        return !"82".equals(((Element) components.item(0)).getAttribute("componentId")); // 'R'
+    }
+
+    private static Element firstElement(Node root, String name) {
+        if (!(root instanceof Element)) return null;
+        NodeList found = ((Element) root).getElementsByTagName(name);
+        return found.getLength() == 0 ? null : (Element) found.item(0);
+    }
+}
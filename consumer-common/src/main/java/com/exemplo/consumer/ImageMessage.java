@@ -0,0 +1,36 @@
+package com.exemplo.consumer;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImageMessage {
+    @JsonProperty("id") private String id;
+    @JsonProperty("tipo") private String type;
+    @JsonProperty("nomeArquivo") private String fileName;
+    @JsonProperty("timestamp") private long timestamp;
+    @JsonProperty("dadosImagem") private byte[] imageData;
+    @JsonProperty("hashImagem") private String imageHash;
+    @JsonProperty("tamanhoImagem") private int imageSize = -1;
+
+    public ImageMessage() {}
+
+    public ImageMessage(String id, String type, String fileName, long timestamp, byte[] imageData,
+                        String imageHash, int imageSize) {
+        this.id = id;
+        this.type = type;
+        this.fileName = fileName;
+        this.timestamp = timestamp;
+        this.imageData = imageData;
+        this.imageHash = imageHash;
+        this.imageSize = imageSize;
+    }
+
+    public String getId() { return id; }
+    public String getType() { return type; }
+    public String getFileName() { return fileName; }
+    public long getTimestamp() { return timestamp; }
+    public byte[] getImageData() { return imageData; }
+    public String getImageHash() { return imageHash; }
+    public int getImageSize() { return imageSize; }
+}
@@ -0,0 +1,47 @@
+package com.exemplo.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Delivery;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Decodifica a mensagem conforme o content-type: {@code application/octet-stream} traz os
+ * metadados nos headers AMQP e a imagem crua no corpo; os demais são o JSON com base64.
+ * No claim-check ({@code hashImagem} presente) o corpo vem vazio e a imagem fica no armazém.
+ */
+final class MessageCodec {
+    static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+
+    private MessageCodec() {}
+
+    static ImageMessage decode(ObjectMapper objectMapper, Delivery delivery) throws IOException {
+        AMQP.BasicProperties props = delivery.getProperties();
+        if (!BINARY_CONTENT_TYPE.equals(props.getContentType())) {
+            return objectMapper.readValue(delivery.getBody(), ImageMessage.class);
+        }
+
+        Map<String, Object> headers = props.getHeaders();
+        if (headers == null) {
+            throw new IOException("Mensagem binária sem headers de metadados");
+        }
+        Object timestamp = headers.get("timestamp");
+        Object size = headers.get("tamanhoImagem");
+        String hash = header(headers, "hashImagem");
+        return new ImageMessage(
+                header(headers, "id"),
+                header(headers, "tipo"),
+                header(headers, "nomeArquivo"),
+                timestamp instanceof Number ? ((Number) timestamp).longValue() : 0L,
+                hash == null ? delivery.getBody() : null,
+                hash,
+                size instanceof Number ? ((Number) size).intValue() : -1);
+    }
+
+    private static String header(Map<String, Object> headers, String name) {
+        Object value = headers.get(name);
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package com.exemplo.consumer;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Métricas do consumidor no formato texto do Prometheus: latência por estágio, contadores e
+ * gauges avaliados a cada coleta. Servidas em {@code /metrics} por um HttpServer do JDK.
+ */
+public final class Metrics {
+    private final Map<String, LatencyHistogram> stages = new ConcurrentSkipListMap<>();
+    private final Map<String, Metric> metrics = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile boolean ready;
+    private volatile double startupSeconds = Double.NaN;
+    private HttpServer server;
+
+    Metrics() {
+        register("consumer_ready", "gauge", "1 depois que o modelo foi carregado e aquecido.", () -> ready ? 1 : 0);
+        register("consumer_startup_seconds", "gauge", "Tempo do início da JVM até o consumidor ficar pronto.", () -> startupSeconds);
+    }
+
+    void markReady() {
+        startupSeconds = ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0;
+        ready = true;
+    }
+
+    double startupSeconds() {
+        return startupSeconds;
+    }
+
+    void resetStages() {
+        for (LatencyHistogram h : stages.values()) {
+            h.reset();
+        }
+    }
+
+    public LatencyHistogram stage(String name) {
+        return stages.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    LongAdder counter(String name, String help) {
+        LongAdder adder = new LongAdder();
+        register(name, "counter", help, adder::sum);
+        return adder;
+    }
+
+    void register(String name, String type, String help, DoubleSupplier value) {
+        metrics.put(name, new Metric(type, help, value));
+    }
+
+    String render() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP consumer_stage_latency_seconds Latência por estágio (por mensagem; tensor e inference por lote).\n");
+        out.append("# TYPE consumer_stage_latency_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> e : stages.entrySet()) {
+            LatencyHistogram h = e.getValue();
+            long[] counts = h.snapshot();
+            for (double q : new double[]{0.5, 0.9, 0.99, 0.999}) {
+                out.append("consumer_stage_latency_seconds{stage=\"").append(e.getKey())
+                   .append("\",quantile=\"").append(q).append("\"} ")
+                   .append(Math.min(LatencyHistogram.quantile(counts, q), h.maxNanos()) / 1e9).append('\n');
+            }
+            out.append("consumer_stage_latency_seconds_sum{stage=\"").append(e.getKey()).append("\"} ")
+               .append(h.sumNanos() / 1e9).append('\n');
+            out.append("consumer_stage_latency_seconds_count{stage=\"").append(e.getKey()).append("\"} ")
+               .append(h.count()).append('\n');
+        }
+        out.append("# HELP consumer_stage_latency_max_seconds Maior latência observada por estágio.\n");
+        out.append("# TYPE consumer_stage_latency_max_seconds gauge\n");
+        for (Map.Entry<String, LatencyHistogram> e : stages.entrySet()) {
+            out.append("consumer_stage_latency_max_seconds{stage=\"").append(e.getKey()).append("\"} ")
+               .append(e.getValue().maxNanos() / 1e9).append('\n');
+        }
+        synchronized (metrics) {
+            for (Map.Entry<String, Metric> e : metrics.entrySet()) {
+                Metric m = e.getValue();
+                double value;
+                try {
+                    value = m.value.getAsDouble();
+                } catch (Exception ex) {
+                    value = Double.NaN;
+                }
+                out.append("# HELP ").append(e.getKey()).append(' ').append(m.help).append('\n');
+                out.append("# TYPE ").append(e.getKey()).append(' ').append(m.type).append('\n');
+                out.append(e.getKey()).append(' ').append(value).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /** Sobe {@code /metrics} e {@code /ready} (200 quando pronto, 503 enquanto carrega ou aquece). */
+    synchronized void serve(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.createContext("/ready", exchange -> {
+            byte[] body = (ready ? "pronto\n" : "aquecendo\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(ready ? 200 : 503, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+    }
+
+    synchronized void stop() {
+        if (server != null) server.stop(0);
+    }
+
+    private static final class Metric {
+        final String type;
+        final String help;
+        final DoubleSupplier value;
+
+        Metric(String type, String help, DoubleSupplier value) {
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.exemplo.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Acumula itens até {@code batchSize} ou até {@code maxWaitMs} após o primeiro item do lote,
+ * e entrega cada lote, em ordem, a uma única thread de processamento.
+ */
+class MicroBatcher<T> {
+    private final int batchSize;
+    private final long maxWaitMs;
+    private final Consumer<List<T>> processor;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private List<T> pending = new ArrayList<>();
+    private ScheduledFuture<?> deadline;
+    private long generation;
+
+    MicroBatcher(int batchSize, long maxWaitMs, Consumer<List<T>> processor) {
+        this.batchSize = Math.max(1, batchSize);
+        this.maxWaitMs = maxWaitMs;
+        this.processor = processor;
+    }
+
+    synchronized int pendingSize() {
+        return pending.size();
+    }
+
+    synchronized void add(T item) {
+        pending.add(item);
+        if (pending.size() >= batchSize) {
+            flush();
+        } else if (pending.size() == 1) {
+            long current = generation;
+            deadline = executor.schedule(() -> flushIfStill(current), maxWaitMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flushIfStill(long expectedGeneration) {
+        if (generation == expectedGeneration && !pending.isEmpty()) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (deadline != null) {
+            deadline.cancel(false);
+            deadline = null;
+        }
+        generation++;
+        List<T> batch = pending;
+        pending = new ArrayList<>(batchSize);
+        executor.execute(() -> processor.accept(batch));
+    }
+
+    /** Executa uma tarefa avulsa na mesma thread que processa os lotes. */
+    Future<?> submit(Runnable task) {
+        return executor.submit(task);
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
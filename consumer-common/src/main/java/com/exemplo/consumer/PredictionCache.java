@@ -0,0 +1,81 @@
+package com.exemplo.consumer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache LRU de predições indexado pelo hash do conteúdo da imagem, com limite de entradas,
+ * TTL opcional e contadores de acertos/falhas. Compartilhado entre os workers.
+ */
+class PredictionCache<V> {
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<Long, CachedValue<V>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    PredictionCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<Long, CachedValue<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedValue<V>> eldest) {
+                if (size() > PredictionCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    synchronized V get(long key) {
+        CachedValue<V> entry = entries.get(key);
+        if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.createdAt > ttlNanos) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    synchronized void put(long key, V value) {
+        entries.put(key, new CachedValue<>(value, System.nanoTime()));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHits() { return hits.get(); }
+    long getMisses() { return misses.get(); }
+    long getEvictions() { return evictions.get(); }
+
+    String stats() {
+        long h = hits.get(), m = misses.get();
+        return String.format("Cache: %d entradas | acertos %d | falhas %d | remoções %d | taxa de acerto %.1f%%",
+                size(), h, m, evictions.get(), h + m == 0 ? 0.0 : 100.0 * h / (h + m));
+    }
+
+    private static class CachedValue<V> {
+        final V value;
+        final long createdAt;
+
+        CachedValue(V value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+}
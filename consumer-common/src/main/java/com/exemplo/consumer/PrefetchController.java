@@ -0,0 +1,92 @@
+package com.exemplo.consumer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prefetch adaptativo de um channel pela lei de Little: para a inferência nunca esperar, o
+ * worker precisa ter sem ack o lote em inferência, o próximo lote já decodificado e tudo o que
+ * a réplica infere enquanto uma mensagem está fora do lote, ou seja, a vazão do modelo vezes a
+ * soma da ida e volta do ack até a próxima entrega, do decode e do confirm do resultado. Acima
+ * disso as mensagens só esperariam no consumidor, sem ack e fora do alcance das outras
+ * réplicas. Os tempos são médias móveis exponenciais; a ida e volta só é amostrada quando um
+ * ack libera uma janela cheia, e amostras longas demais (fila vazia) são descartadas. O valor
+ * fica sempre entre {@code BATCH_SIZE} e {@code PREFETCH_MAX}.
+ */
+final class PrefetchController {
+    private static final double ALPHA = 0.2;
+    private static final long MAX_ROUND_TRIP_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final int batchSize;
+    private final int min;
+    private final int max;
+    private volatile int current;
+    private double inferenceNanosPerItem;
+    private double decodeNanos;
+    private double confirmNanos;
+    private double roundTripNanos;
+    private long releasedAt = -1;
+
+    PrefetchController(int initial, int batchSize, int max) {
+        this.batchSize = Math.max(1, batchSize);
+        this.max = Math.max(max, initial);
+        // abaixo de um lote o batcher nunca enche e toda inferência espera o BATCH_MAX_WAIT_MS
+        this.min = Math.min(this.batchSize, this.max);
+        this.current = Math.max(initial, this.min);
+    }
+
+    int current() {
+        return current;
+    }
+
+    /** Tempo de um lote; dividido pelo tamanho cheio, é o custo por imagem com o lote completo. */
+    synchronized void recordInference(long batchNanos) {
+        inferenceNanosPerItem = ewma(inferenceNanosPerItem, batchNanos / (double) batchSize);
+    }
+
+    synchronized void recordDecode(long nanos) {
+        decodeNanos = ewma(decodeNanos, nanos);
+    }
+
+    synchronized void recordConfirm(long nanos) {
+        confirmNanos = ewma(confirmNanos, nanos);
+    }
+
+    /** Um ack acabou de abrir espaço em uma janela cheia; a próxima entrega fecha a amostra. */
+    synchronized void windowReleased(long now) {
+        if (releasedAt < 0) releasedAt = now;
+    }
+
+    synchronized void delivered(long now) {
+        if (releasedAt < 0) return;
+        long roundTrip = now - releasedAt;
+        releasedAt = -1;
+        if (roundTrip <= MAX_ROUND_TRIP_NANOS) {
+            roundTripNanos = ewma(roundTripNanos, roundTrip);
+        }
+    }
+
+    synchronized int target() {
+        if (inferenceNanosPerItem <= 0) return current;
+        double exposed = roundTripNanos + decodeNanos + confirmNanos;
+        long target = 2L * batchSize + (long) Math.ceil(exposed / inferenceNanosPerItem);
+        return (int) Math.max(min, Math.min(max, target));
+    }
+
+    /** Novo prefetch, quando o alvo se afasta ao menos 25% do atual; senão -1. */
+    synchronized int adjust() {
+        int target = target();
+        if (Math.abs(target - current) < Math.max(1, current / 4)) return -1;
+        current = target;
+        return target;
+    }
+
+    private static double ewma(double average, double sample) {
+        return average == 0 ? sample : average + ALPHA * (sample - average);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("inferência %.2f ms/img, ida e volta %.2f ms, decode %.2f ms, confirm %.2f ms",
+                inferenceNanosPerItem / 1e6, roundTripNanos / 1e6, decodeNanos / 1e6, confirmNanos / 1e6);
+    }
+}
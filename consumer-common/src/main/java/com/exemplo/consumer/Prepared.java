@@ -0,0 +1,17 @@
+package com.exemplo.consumer;
+
+/** Mensagem entre os estágios do worker: decodificada, com a imagem pronta para o lote ou já resolvida. */
+final class Prepared<R> {
+    final Received received;
+    final ImageMessage message;
+    long key;
+    long decodeNanos;
+    // imagem redimensionada (null se o decode falhou) e, depois da inferência ou do cache, o resultado
+    byte[] pixels;
+    R result;
+
+    Prepared(Received received, ImageMessage message) {
+        this.received = received;
+        this.message = message;
+    }
+}
@@ -0,0 +1,14 @@
+package com.exemplo.consumer;
+
+import com.rabbitmq.client.Delivery;
+
+/** Entrega do broker com o instante em que chegou ao worker. */
+final class Received {
+    final Delivery delivery;
+    final long receivedAt;
+
+    Received(Delivery delivery, long receivedAt) {
+        this.delivery = delivery;
+        this.receivedAt = receivedAt;
+    }
+}
@@ -0,0 +1,38 @@
+package com.exemplo.consumer;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * Resultado publicado em {@code RESULTS_EXCHANGE}: predição, timestamp original da mensagem
+ * (para a latência fim a fim) e os tempos do consumidor em milissegundos.
+ */
+public class ResultMessage {
+    @JsonProperty("id") private final String id;
+    @JsonProperty("tipo") private final String type;
+    @JsonProperty("rotulo") private final String label;
+    @JsonProperty("confianca") private final double confidence;
+    @JsonProperty("timestamp") private final long timestamp;
+    @JsonProperty("consumidor") private final String consumer;
+    @JsonProperty("etapasMs") private final Map<String, Double> stagesMs;
+
+    public ResultMessage(String id, String type, String label, double confidence, long timestamp,
+                         String consumer, Map<String, Double> stagesMs) {
+        this.id = id;
+        this.type = type;
+        this.label = label;
+        this.confidence = confidence;
+        this.timestamp = timestamp;
+        this.consumer = consumer;
+        this.stagesMs = stagesMs;
+    }
+
+    public String getId() { return id; }
+    public String getType() { return type; }
+    public String getLabel() { return label; }
+    public double getConfidence() { return confidence; }
+    public long getTimestamp() { return timestamp; }
+    public String getConsumer() { return consumer; }
+    public Map<String, Double> getStagesMs() { return stagesMs; }
+}
@@ -0,0 +1,48 @@
+package com.exemplo.consumer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Divisão da fila em {@code SHARDS} filas ({@code <fila>.0}, ...) que o gerador escolhe pelo
+ * conteúdo da imagem. Cada réplica consome todas, com {@code x-priority} dado por rendezvous
+ * hashing (HRW) do seu id com o shard: o broker entrega cada fila à réplica ativa de maior
+ * prioridade, que fica com o cache quente para aquelas imagens, e só transborda para as
+ * demais quando o prefetch dela enche. Quando uma réplica entra ou sai, só os shards em que
+ * ela é (ou era) a preferida mudam de dono, sem coordenação entre as réplicas.
+ */
+final class Sharding {
+    static String queue(String baseQueue, int shard) {
+        return baseQueue + "." + shard;
+    }
+
+    static List<String> queues(String baseQueue, int shards) {
+        if (shards <= 0) return Collections.singletonList(baseQueue);
+        List<String> queues = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            queues.add(queue(baseQueue, shard));
+        }
+        return queues;
+    }
+
+    /** Peso HRW da réplica no shard, em [0, 2^31): um FNV-1a de 64 bits embaralhado. */
+    static int priority(String consumerId, int shard) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : (consumerId + "#" + shard).getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return (int) ((h ^ (h >>> 31)) >>> 33);
+    }
+
+    static String describe(String consumerId, int shards) {
+        Integer[] order = new Integer[shards];
+        for (int shard = 0; shard < shards; shard++) order[shard] = shard;
+        Arrays.sort(order, (a, b) -> Integer.compare(priority(consumerId, b), priority(consumerId, a)));
+        return Arrays.toString(order);
+    }
+}
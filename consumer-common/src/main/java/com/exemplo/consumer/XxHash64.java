@@ -0,0 +1,80 @@
+package com.exemplo.consumer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** xxHash64 (seed 0): hash rápido, não criptográfico, do conteúdo da imagem. */
+final class XxHash64 {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private XxHash64() {}
+
+    static long hash(byte[] data) {
+        return hash(ByteBuffer.wrap(data));
+    }
+
+    /** Hash dos bytes entre position e limit, sem alterar o buffer (heap, direto ou mapeado). */
+    static long hash(ByteBuffer data) {
+        ByteBuffer buf = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int p = buf.position();
+        int end = buf.limit();
+        int length = end - p;
+        long h;
+
+        if (length >= 32) {
+            long v1 = P1 + P2, v2 = P2, v3 = 0, v4 = -P1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, buf.getLong(p));
+                v2 = round(v2, buf.getLong(p + 8));
+                v3 = round(v3, buf.getLong(p + 16));
+                v4 = round(v4, buf.getLong(p + 24));
+                p += 32;
+            } while (p <= limit);
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = P5;
+        }
+
+        h += length;
+        for (; p + 8 <= end; p += 8) {
+            h ^= round(0, buf.getLong(p));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (p + 4 <= end) {
+            h ^= (buf.getInt(p) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            p += 4;
+        }
+        for (; p < end; p++) {
+            h ^= (buf.get(p) & 0xFF) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long merge(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * P1 + P4;
+    }
+}
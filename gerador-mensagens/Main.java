@@ -1,5 +1,7 @@
 package com.exemplo;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rabbitmq.client.*;
@@ -7,28 +9,57 @@ import com.rabbitmq.client.*;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
-class Main {
+public class Main {
     private static final String EXCHANGE_NAME = "image_analysis_exchange";
-    private static final String FACES_DIR = "/app/base-rosto/";
-    private static final String FOOTBALL_DIR = "/app/base-brasao/";
+    private static final String FACES_DIR = System.getenv().getOrDefault("FACES_DIR", "/app/base-rosto/");
+    private static final String FOOTBALL_DIR = System.getenv().getOrDefault("FOOTBALL_DIR", "/app/base-brasao/");
+    private static final String WIRE_FORMAT = System.getenv().getOrDefault("WIRE_FORMAT", "json");
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+    private static final double LOAD_RATE = Double.parseDouble(System.getenv().getOrDefault("LOAD_RATE", "0.4"));
+    private static final String LOAD_PROFILE = System.getenv().getOrDefault("LOAD_PROFILE", "constant");
+    private static final double LOAD_RAMP_START_RATE = Double.parseDouble(System.getenv().getOrDefault("LOAD_RAMP_START_RATE", "1"));
+    private static final double LOAD_RAMP_SECONDS = Double.parseDouble(System.getenv().getOrDefault("LOAD_RAMP_SECONDS", "60"));
+    private static final long LOAD_DURATION_SECONDS = Long.parseLong(System.getenv().getOrDefault("LOAD_DURATION_SECONDS", "0"));
+    private static final long LOAD_MESSAGE_COUNT = Long.parseLong(System.getenv().getOrDefault("LOAD_MESSAGE_COUNT", "0"));
+    private static final int PUBLISHER_THREADS = Integer.parseInt(System.getenv().getOrDefault("PUBLISHER_THREADS", "1"));
+    private static final int MAX_OUTSTANDING_CONFIRMS = Integer.parseInt(System.getenv().getOrDefault("MAX_OUTSTANDING_CONFIRMS", "1000"));
+    private static final double FACE_RATIO = Double.parseDouble(System.getenv().getOrDefault("FACE_RATIO", "0.5"));
+    private static final long REPORT_INTERVAL_SECONDS = 5;
+    private static final boolean PRELOAD_PAYLOADS = Boolean.parseBoolean(System.getenv().getOrDefault("PRELOAD_PAYLOADS", "false"));
+    private static final String RESULTS_EXCHANGE = System.getenv().getOrDefault("RESULTS_EXCHANGE", "image_results_exchange");
+    private static final int E2E_WINDOW_SECONDS = Integer.parseInt(System.getenv().getOrDefault("E2E_WINDOW_SECONDS", "60"));
+    private static final long E2E_SLO_MS = Long.parseLong(System.getenv().getOrDefault("E2E_SLO_MS", "0"));
+    private static final boolean CLAIM_CHECK = Boolean.parseBoolean(System.getenv().getOrDefault("CLAIM_CHECK", "false"));
+    private static final String BLOB_DIR = System.getenv().getOrDefault("BLOB_DIR", "/app/blobs");
+    private static final int SHARDS = Integer.parseInt(System.getenv().getOrDefault("SHARDS", "0"));
+    private static final boolean BACKPRESSURE = Boolean.parseBoolean(System.getenv().getOrDefault("BACKPRESSURE", "true"));
+    private static final long MAX_QUEUE_DEPTH = Long.parseLong(System.getenv().getOrDefault("MAX_QUEUE_DEPTH", "10000"));
+    private static final double MAX_CONFIRM_LATENCY_MS = Double.parseDouble(System.getenv().getOrDefault("MAX_CONFIRM_LATENCY_MS", "1000"));
+    private static final long BACKPRESSURE_INTERVAL_MS = Long.parseLong(System.getenv().getOrDefault("BACKPRESSURE_INTERVAL_MS", "1000"));
+    private static final long PRELOAD_MAX_MB = Long.parseLong(System.getenv().getOrDefault("PRELOAD_MAX_MB", "512"));
 
     private Connection connection;
     private Channel channel;
     private ObjectMapper objectMapper;
     private List<Path> faceImages;
     private List<Path> footballImages;
-    private Random random;
-    private AtomicLong messagesSent;
+    private PayloadCache payloads;
+    private BlobStore blobs;
+    private final LoadStats stats = new LoadStats();
+    private Backpressure backpressure;
+    private Channel monitorChannel;
+    private final LatencyWindow endToEnd = new LatencyWindow(Math.max(E2E_WINDOW_SECONDS, (int) REPORT_INTERVAL_SECONDS));
 
     public Main() {
         this.objectMapper = new ObjectMapper();
         this.faceImages = new ArrayList<>();
         this.footballImages = new ArrayList<>();
-        this.random = new Random();
-        this.messagesSent = new AtomicLong(0);
     }
 
     public void connectRabbitMQ() throws IOException, TimeoutException {
@@ -42,19 +73,36 @@ class Main {
         factory.setPassword(pass);
         factory.setAutomaticRecoveryEnabled(true);
         factory.setNetworkRecoveryInterval(5000);
+        connectRabbitMQ(factory);
+    }
 
+    /** Conecta pela fábrica dada (o harness de ponta a ponta passa um broker em memória) e declara a topologia. */
+    public void connectRabbitMQ(ConnectionFactory factory) throws IOException, TimeoutException {
         connection = factory.newConnection();
         channel = connection.createChannel();
         channel.exchangeDeclare(EXCHANGE_NAME, BuiltinExchangeType.TOPIC, true);
 
         // Queues separadas
-        channel.queueDeclare("face_queue", true, false, false, null);
-        channel.queueBind("face_queue", EXCHANGE_NAME, "face");
+        if (SHARDS > 0) {
+            for (String type : new String[]{"face", "team"}) {
+                for (int shard = 0; shard < SHARDS; shard++) {
+                    String queue = Sharding.queue(type + "_queue", shard);
+                    channel.queueDeclare(queue, true, false, false, null);
+                    channel.queueBind(queue, EXCHANGE_NAME, Sharding.routingKey(type, shard));
+                }
+            }
+            System.out.println("Roteamento por conteúdo em " + SHARDS + " shard(s) por tipo");
+        } else {
+            channel.queueDeclare("face_queue", true, false, false, null);
+            channel.queueBind("face_queue", EXCHANGE_NAME, "face");
+
+            channel.queueDeclare("team_queue", true, false, false, null);
+            channel.queueBind("team_queue", EXCHANGE_NAME, "team");
+        }
 
-        channel.queueDeclare("team_queue", true, false, false, null);
-        channel.queueBind("team_queue", EXCHANGE_NAME, "team");
+        channel.exchangeDeclare(RESULTS_EXCHANGE, BuiltinExchangeType.TOPIC, true);
 
-        System.out.println("Conectado ao RabbitMQ em: " + host);
+        System.out.println("Conectado ao RabbitMQ em: " + factory.getHost());
     }
 
     public void loadImages() throws IOException {
@@ -67,6 +115,30 @@ class Main {
 
         System.out.println("✅ Carregadas " + faceImages.size() + " imagens de rostos");
         System.out.println("✅ Carregadas " + footballImages.size() + " imagens de futebol");
+
+        if (CLAIM_CHECK) {
+            blobs = new BlobStore(Paths.get(BLOB_DIR));
+            System.out.println("✅ Claim-check ativo: imagens gravadas em " + BLOB_DIR + ", só o hash vai pelo broker");
+        }
+
+        if (PRELOAD_PAYLOADS) {
+            long t0 = System.nanoTime();
+            payloads = PayloadCache.load(faceImages, footballImages, objectMapper, blobs,
+                    !WIRE_FORMAT.equalsIgnoreCase("binary"), PRELOAD_MAX_MB << 20);
+            System.out.printf("✅ Pré-carregados %d payloads de rostos e %d de futebol (%.1f MB no heap) em %d ms%n",
+                    payloads.size("face"), payloads.size("team"), payloads.bytesUsed() / 1048576.0,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0));
+            if (payloads.size("face") == 0 && payloads.size("team") == 0) {
+                throw new IOException("PRELOAD_MAX_MB=" + PRELOAD_MAX_MB + " não comporta nenhum payload; aumente o limite ou desative PRELOAD_PAYLOADS");
+            }
+            for (String type : new String[]{"face", "team"}) {
+                boolean hasImages = !(type.equals("face") ? faceImages : footballImages).isEmpty();
+                if (hasImages && payloads.size(type) == 0) {
+                    System.out.printf("⚠️ Nenhum payload de %s coube em PRELOAD_MAX_MB=%d; só o outro tipo será enviado%n",
+                            type.equals("face") ? "rostos" : "futebol", PRELOAD_MAX_MB);
+                }
+            }
+        }
     }
 
     private void loadDirImagesRecursive(String dir, List<Path> list, List<String> exts) throws IOException {
@@ -79,44 +151,289 @@ class Main {
         }
     }
 
-    public void startSending() {
-    System.out.println("Iniciando envio de mensagens a cada 5 segundos...");
-    while (true) {
+    /**
+     * Gera carga em malha aberta: cada mensagem tem um instante agendado pelo perfil de taxa
+     * (constante ou rampa) e sai nesse instante, independente de quanto o broker demora.
+     * Roda até LOAD_DURATION_SECONDS ou LOAD_MESSAGE_COUNT (0 = sem limite). Com BACKPRESSURE, o
+     * perfil é desacelerado quando as filas ou os confirms indicam que o sistema não acompanha.
+     */
+    public void startSending() throws IOException, InterruptedException {
+        if (LOAD_RATE <= 0 || PUBLISHER_THREADS <= 0) {
+            throw new IllegalArgumentException("LOAD_RATE e PUBLISHER_THREADS devem ser positivos");
+        }
+        RateProfile profile = LOAD_PROFILE.equalsIgnoreCase("ramp")
+                ? new RateProfile(LOAD_RAMP_START_RATE, LOAD_RATE, LOAD_RAMP_SECONDS)
+                : new RateProfile(LOAD_RATE, LOAD_RATE, 0);
+        System.out.printf("Iniciando carga %s: %.2f msg/s, %d publicador(es), %.0f%% rostos, até %d confirms pendentes por publicador%n",
+                LOAD_PROFILE, LOAD_RATE, PUBLISHER_THREADS, FACE_RATIO * 100, MAX_OUTSTANDING_CONFIRMS);
+
+        consumeResults();
+
+        long start = System.nanoTime();
+        backpressure = new Backpressure(start, BACKPRESSURE ? MAX_QUEUE_DEPTH : 0,
+                BACKPRESSURE ? MAX_CONFIRM_LATENCY_MS : 0, TimeUnit.MILLISECONDS.toNanos(BACKPRESSURE_INTERVAL_MS));
+        if (BACKPRESSURE) {
+            connection.addBlockedListener(backpressure::blocked, backpressure::unblocked);
+            System.out.printf("Contrapressão ativa: fila até %d mensagens, confirm médio até %.0f ms%n",
+                    MAX_QUEUE_DEPTH, MAX_CONFIRM_LATENCY_MS);
+        }
+        long deadline = LOAD_DURATION_SECONDS > 0 ? start + TimeUnit.SECONDS.toNanos(LOAD_DURATION_SECONDS) : Long.MAX_VALUE;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < PUBLISHER_THREADS; i++) {
+            long quota = LOAD_MESSAGE_COUNT <= 0 ? 0
+                    : LOAD_MESSAGE_COUNT / PUBLISHER_THREADS + (i < LOAD_MESSAGE_COUNT % PUBLISHER_THREADS ? 1 : 0);
+            if (LOAD_MESSAGE_COUNT > 0 && quota == 0) continue;
+            Publisher publisher = new Publisher(connection.createChannel(), profile.scaled(1.0 / PUBLISHER_THREADS), deadline, quota);
+            Thread thread = new Thread(publisher, "publicador-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        if (BACKPRESSURE) {
+            reporter.scheduleWithFixedDelay(() -> backpressure.update(queueDepth(), System.nanoTime()),
+                    BACKPRESSURE_INTERVAL_MS, BACKPRESSURE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        reporter.scheduleAtFixedRate(() -> {
+            System.out.println(stats.report(System.nanoTime() - start));
+            if (BACKPRESSURE) System.out.println(backpressure.report());
+            System.out.println(endToEnd.report((int) REPORT_INTERVAL_SECONDS, E2E_SLO_MS));
+            System.out.println(endToEnd.report(E2E_WINDOW_SECONDS, E2E_SLO_MS));
+        }, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
         try {
-            if (!faceImages.isEmpty()) {
-                MensagemImagem faceMsg = createMessage(faceImages, "face");
-                channel.basicPublish(EXCHANGE_NAME, "face",
-                        MessageProperties.PERSISTENT_TEXT_PLAIN,
-                        objectMapper.writeValueAsBytes(faceMsg));
-                 System.out.println("-> Mensagem de rosto enviada.");
-            }
-
-            if (!footballImages.isEmpty()) {
-                MensagemImagem teamMsg = createMessage(footballImages, "team");
-                channel.basicPublish(EXCHANGE_NAME, "team",
-                        MessageProperties.PERSISTENT_TEXT_PLAIN,
-                        objectMapper.writeValueAsBytes(teamMsg));
-                System.out.println("-> Mensagem de brasão enviada.");
-            }
-            
-            
-            Thread.sleep(5000); 
-
-        } catch (InterruptedException e) {
-            System.err.println("Thread de envio interrompida.");
-            Thread.currentThread().interrupt(); // Restaura o status de interrupção
-        } catch (Exception e) {
-            System.err.println("Erro ao enviar mensagem: " + e.getMessage());
-            try { Thread.sleep(1000); } catch (InterruptedException ignored) {}
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            reporter.shutdownNow();
         }
+        System.out.println("Carga concluída. " + stats.report(System.nanoTime() - start));
+        System.out.println(endToEnd.report(E2E_WINDOW_SECONDS, E2E_SLO_MS));
+    }
+
+    /**
+     * Mensagens prontas no tipo mais atrasado (somando os shards), lidas com queueDeclarePassive em
+     * um channel próprio; -1 se o broker não respondeu, e o channel é recriado na próxima leitura.
+     */
+    private long queueDepth() {
+        try {
+            if (monitorChannel == null || !monitorChannel.isOpen()) {
+                monitorChannel = connection.createChannel();
+            }
+            long deepest = 0;
+            for (String type : new String[]{"face", "team"}) {
+                long depth = 0;
+                for (int shard = 0; shard < Math.max(1, SHARDS); shard++) {
+                    String queue = SHARDS > 0 ? Sharding.queue(type + "_queue", shard) : type + "_queue";
+                    depth += monitorChannel.queueDeclarePassive(queue).getMessageCount();
+                }
+                deepest = Math.max(deepest, depth);
+            }
+            return deepest;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Não foi possível ler a profundidade das filas: " + e.getMessage());
+            monitorChannel = null;
+            return -1;
+        }
+    }
+
+    /**
+     * Acompanha os resultados publicados pelos consumidores em uma fila exclusiva e registra a
+     * latência fim a fim (timestamp da mensagem original até a chegada do resultado).
+     */
+    private void consumeResults() throws IOException {
+        Channel resultsChannel = connection.createChannel();
+        String queue = resultsChannel.queueDeclare().getQueue();
+        resultsChannel.queueBind(queue, RESULTS_EXCHANGE, "#");
+        resultsChannel.basicConsume(queue, true, (consumerTag, delivery) -> {
+            try {
+                Resultado result = objectMapper.readValue(delivery.getBody(), Resultado.class);
+                long now = System.currentTimeMillis();
+                endToEnd.record(now - result.getTimestamp(), now);
+            } catch (IOException e) {
+                System.err.println("Resultado inválido ignorado: " + e.getMessage());
+            }
+        }, consumerTag -> {});
+    }
+
+    /** Tipo da n-ésima mensagem: distribui FACE_RATIO de rostos de forma uniforme, sem sorteio. */
+    private String pickType(long n) {
+        if (payloads != null ? payloads.size("face") == 0 : faceImages.isEmpty()) return "team";
+        if (payloads != null ? payloads.size("team") == 0 : footballImages.isEmpty()) return "face";
+        return Math.floor((n + 1) * FACE_RATIO) > Math.floor(n * FACE_RATIO) ? "face" : "team";
     }
-}
 
-    private void printStatus(MensagemImagem msg) {
-        long count = messagesSent.incrementAndGet();
-        if (count % 10 == 0) {
-            double tamanhoKB = msg.getImageData().length / 1024.0;
-            System.out.printf("Mensagens enviadas: %d - %s (%.1fKB)\n", count, msg.getFileName(), tamanhoKB);
+    /** Publicador com channel próprio e confirms assíncronos, limitados a MAX_OUTSTANDING_CONFIRMS. */
+    private class Publisher implements Runnable {
+        private final Channel channel;
+        private final RateProfile profile;
+        private final long deadline;
+        private final long quota;
+        private final Semaphore permits;
+        private final ConcurrentNavigableMap<Long, Long> outstanding = new ConcurrentSkipListMap<>();
+
+        Publisher(Channel channel, RateProfile profile, long deadline, long quota) throws IOException {
+            this.channel = channel;
+            this.profile = profile;
+            this.deadline = deadline;
+            this.quota = quota;
+            this.permits = MAX_OUTSTANDING_CONFIRMS > 0 ? new Semaphore(MAX_OUTSTANDING_CONFIRMS) : null;
+            if (permits != null) {
+                channel.confirmSelect();
+                channel.addConfirmListener((seq, multiple) -> confirmed(seq, multiple, true),
+                        (seq, multiple) -> confirmed(seq, multiple, false));
+            }
+        }
+
+        @Override
+        public void run() {
+            long n = 0;
+            try {
+                while (quota == 0 || n < quota) {
+                    long lag = backpressure.await(profile.offsetNanos(n), deadline);
+                    if (lag < 0) break;
+                    stats.recordLag(lag);
+
+                    String type = pickType(n++);
+                    MensagemImagem msg;
+                    try {
+                        // lido antes de pegar a permissão, para não contar a leitura no tempo do confirm
+                        msg = payloads == null
+                                ? createMessage(type.equals("face") ? faceImages : footballImages, type) : null;
+                    } catch (RuntimeException e) {
+                        stats.errors.increment();
+                        System.err.println("Erro ao criar mensagem: " + e.getMessage());
+                        continue;
+                    }
+                    long seq = channel.getNextPublishSeqNo();
+                    if (permits != null) {
+                        permits.acquire();
+                        outstanding.put(seq, System.nanoTime());
+                    }
+                    try {
+                        if (msg != null) {
+                            publish(channel, routingKey(type, msg), msg);
+                        } else {
+                            PayloadCache.Payload payload = payloads.pick(type);
+                            publishPreloaded(channel, type, payload);
+                        }
+                        stats.sent.increment();
+                    } catch (IOException | RuntimeException e) {
+                        stats.errors.increment();
+                        System.err.println("Erro ao enviar mensagem: " + e.getMessage());
+                        if (permits != null) {
+                            if (outstanding.remove(seq) != null) permits.release();
+                        }
+                    }
+                }
+                awaitConfirms();
+            } catch (InterruptedException e) {
+                System.err.println("Thread de envio interrompida.");
+                Thread.currentThread().interrupt();
+            } finally {
+                try { if (channel.isOpen()) channel.close(); } catch (Exception ignored) {}
+            }
+        }
+
+        private void confirmed(long seq, boolean multiple, boolean ack) {
+            long now = System.nanoTime();
+            Map<Long, Long> done = multiple ? outstanding.headMap(seq, true) : null;
+            if (done == null) {
+                Long sentAt = outstanding.remove(seq);
+                if (sentAt != null) record(now - sentAt, ack);
+                return;
+            }
+            for (Iterator<Long> it = done.values().iterator(); it.hasNext(); ) {
+                long sentAt = it.next();
+                it.remove();
+                record(now - sentAt, ack);
+            }
+        }
+
+        private void record(long latencyNanos, boolean ack) {
+            if (ack) {
+                stats.confirmed.increment();
+                stats.recordConfirmLatency(latencyNanos);
+                backpressure.recordConfirm(latencyNanos);
+            } else {
+                stats.nacked.increment();
+            }
+            permits.release();
+        }
+
+        private void awaitConfirms() throws InterruptedException {
+            if (permits == null) return;
+            if (!permits.tryAcquire(MAX_OUTSTANDING_CONFIRMS, 30, TimeUnit.SECONDS)) {
+                System.err.println("Tempo esgotado aguardando " + outstanding.size() + " confirms pendentes");
+            }
+        }
+    }
+
+    /** Chave fixa do tipo ou, com SHARDS, {@code <tipo>.<shard>} escolhido pelo conteúdo da imagem. */
+    private static String routingKey(String type, MensagemImagem msg) {
+        if (SHARDS <= 0) return type;
+        long key = msg.getImageHash() != null ? Sharding.key(msg.getImageHash()) : Sharding.key(msg.getImageData());
+        return Sharding.routingKey(type, Sharding.jump(key, SHARDS));
+    }
+
+    /**
+     * Publica no formato escolhido em WIRE_FORMAT. No modo binário os metadados vão nos headers
+     * AMQP e o corpo é a imagem crua, sem o base64 do JSON; o content-type indica o codec.
+     */
+    private void publish(Channel channel, String routingKey, MensagemImagem msg) throws IOException {
+        if (WIRE_FORMAT.equalsIgnoreCase("binary")) {
+            Map<String, Object> headers = new HashMap<>();
+            headers.put("id", msg.getId());
+            headers.put("tipo", msg.getType());
+            headers.put("nomeArquivo", msg.getFileName());
+            headers.put("timestamp", msg.getTimestamp());
+            if (msg.getImageHash() != null) {
+                headers.put("hashImagem", msg.getImageHash());
+                headers.put("tamanhoImagem", msg.getImageSize());
+            }
+            AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                    .contentType(BINARY_CONTENT_TYPE)
+                    .deliveryMode(2)
+                    .headers(headers)
+                    .build();
+            byte[] body = msg.getImageData() != null ? msg.getImageData() : new byte[0];
+            channel.basicPublish(EXCHANGE_NAME, routingKey, props, body);
+        } else {
+            AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                    .contentType(JSON_CONTENT_TYPE)
+                    .deliveryMode(2)
+                    .build();
+            channel.basicPublish(EXCHANGE_NAME, routingKey, props, objectMapper.writeValueAsBytes(msg));
+        }
+    }
+
+    /**
+     * Publica um payload pré-carregado. No JSON só o id e o timestamp são reescritos sobre o corpo
+     * já serializado; no binário o corpo é a imagem e os metadados variáveis vão nos headers.
+     */
+    private void publishPreloaded(Channel channel, String type, PayloadCache.Payload payload) throws IOException {
+        String routingKey = SHARDS > 0 ? Sharding.routingKey(type, Sharding.jump(payload.shardKey, SHARDS)) : type;
+        String id = UUID.randomUUID().toString();
+        long timestamp = System.currentTimeMillis();
+        if (payload.isJson()) {
+            channel.basicPublish(EXCHANGE_NAME, routingKey, PayloadCache.JSON_PROPS, payload.body(id, timestamp));
+        } else {
+            Map<String, Object> headers = new HashMap<>();
+            headers.put("id", id);
+            headers.put("tipo", type);
+            headers.put("nomeArquivo", payload.fileName);
+            headers.put("timestamp", timestamp);
+            if (payload.imageHash != null) {
+                headers.put("hashImagem", payload.imageHash);
+                headers.put("tamanhoImagem", payload.imageSize);
+            }
+            AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                    .contentType(BINARY_CONTENT_TYPE)
+                    .deliveryMode(2)
+                    .headers(headers)
+                    .build();
+            channel.basicPublish(EXCHANGE_NAME, routingKey, props, payload.body(id, timestamp));
         }
     }
 
@@ -126,11 +443,17 @@ class Main {
         msg.setType(type);
         msg.setTimestamp(System.currentTimeMillis());
 
-        Path imgPath = images.get(random.nextInt(images.size()));
+        Path imgPath = images.get(ThreadLocalRandom.current().nextInt(images.size()));
         msg.setFileName(imgPath.toAbsolutePath().toString());
 
         try {
-            msg.setImageData(Files.readAllBytes(imgPath));
+            if (blobs != null) {
+                BlobStore.Blob blob = blobs.put(imgPath);
+                msg.setImageHash(blob.hash);
+                msg.setImageSize(blob.size);
+            } else {
+                msg.setImageData(Files.readAllBytes(imgPath));
+            }
         } catch (IOException e) {
             throw new RuntimeException("Erro ao ler imagem: " + imgPath, e);
         }
@@ -156,12 +479,557 @@ class Main {
         }
     }
 
+    /**
+     * Perfil de taxa em malha aberta: vai de startRate a endRate linearmente em rampSeconds e
+     * depois fica constante. Converte o índice da mensagem no instante em que ela deve sair.
+     */
+    static class RateProfile {
+        private final double startRate;
+        private final double endRate;
+        private final double rampSeconds;
+
+        RateProfile(double startRate, double endRate, double rampSeconds) {
+            this.startRate = startRate;
+            this.endRate = endRate;
+            this.rampSeconds = rampSeconds;
+        }
+
+        RateProfile scaled(double factor) {
+            return new RateProfile(startRate * factor, endRate * factor, rampSeconds);
+        }
+
+        long offsetNanos(long n) {
+            double seconds;
+            double rampCount = (startRate + endRate) / 2 * rampSeconds;
+            if (rampSeconds <= 0 || startRate == endRate || n >= rampCount) {
+                // mensagens até t na rampa: N(t) = r0 t + (r1 - r0) t² / 2T; depois, r1 constante
+                double afterRamp = rampSeconds > 0 && startRate != endRate ? rampSeconds : 0;
+                double sentInRamp = afterRamp > 0 ? rampCount : 0;
+                seconds = afterRamp + (n - sentInRamp) / endRate;
+            } else {
+                double a = (endRate - startRate) / (2 * rampSeconds);
+                seconds = (-startRate + Math.sqrt(startRate * startRate + 4 * a * n)) / (2 * a);
+            }
+            return (long) (seconds * 1e9);
+        }
+    }
+
+    /**
+     * Latência fim a fim em janela deslizante: um histograma log-linear (16 subdivisões por
+     * potência de 2) por segundo, em anel; a consulta soma os segundos da janela pedida.
+     */
+    static class LatencyWindow {
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+        private final long[][] counts;
+        private final long[] slotSecond;
+        private final long[] slotMax;
+
+        LatencyWindow(int seconds) {
+            counts = new long[seconds][BUCKETS];
+            slotSecond = new long[seconds];
+            slotMax = new long[seconds];
+            Arrays.fill(slotSecond, -1);
+        }
+
+        synchronized void record(long latencyMs, long nowMillis) {
+            long second = nowMillis / 1000;
+            int slot = (int) (second % counts.length);
+            if (slotSecond[slot] > second) return; // segundo já fora do anel
+            if (slotSecond[slot] != second) {
+                Arrays.fill(counts[slot], 0);
+                slotSecond[slot] = second;
+                slotMax[slot] = 0;
+            }
+            long value = Math.max(0, latencyMs);
+            counts[slot][index(value)]++;
+            slotMax[slot] = Math.max(slotMax[slot], value);
+        }
+
+        synchronized String report(int windowSeconds, long sloMs) {
+            int window = Math.min(windowSeconds, counts.length);
+            long newest = System.currentTimeMillis() / 1000;
+            long[] merged = new long[BUCKETS];
+            long total = 0, max = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (slotSecond[i] <= newest - window || slotSecond[i] > newest) continue;
+                for (int b = 0; b < BUCKETS; b++) {
+                    merged[b] += counts[i][b];
+                    total += counts[i][b];
+                }
+                max = Math.max(max, slotMax[i]);
+            }
+            if (total == 0) {
+                return String.format("Fim a fim (%ds): sem resultados", window);
+            }
+            long p99 = Math.min(quantile(merged, total, 0.99), max);
+            return String.format("Fim a fim (%ds): %d resultados (%.1f/s) | p50 %d ms | p90 %d ms | p99 %d ms | p99.9 %d ms | máx. %d ms%s",
+                    window, total, total / (double) window,
+                    Math.min(quantile(merged, total, 0.5), max), Math.min(quantile(merged, total, 0.9), max),
+                    p99, Math.min(quantile(merged, total, 0.999), max), max,
+                    sloMs > 0 ? (p99 <= sloMs ? " | SLO p99 ≤ " + sloMs + " ms: OK" : " | SLO p99 ≤ " + sloMs + " ms: VIOLADO") : "");
+        }
+
+        private static long quantile(long[] counts, long total, double q) {
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return upperBound(i);
+            }
+            return upperBound(counts.length - 1);
+        }
+
+        private static int index(long value) {
+            if (value < SUB) return (int) value;
+            int exp = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB - 1);
+            return (exp - SUB_BITS + 1) * SUB + sub;
+        }
+
+        private static long upperBound(int index) {
+            if (index < SUB) return index;
+            int shift = index / SUB - 1;
+            long lower = (long) (SUB + index % SUB) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+
+    /** Contadores da carga gerada: enviados, confirmados, nacks, atraso do agendamento e latência de confirm. */
+    static class LoadStats {
+        final LongAdder sent = new LongAdder();
+        final LongAdder confirmed = new LongAdder();
+        final LongAdder nacked = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        private final LongAdder confirmLatencyTotal = new LongAdder();
+        private final AtomicLong confirmLatencyMax = new AtomicLong();
+        private final AtomicLong lagMax = new AtomicLong();
+
+        void recordConfirmLatency(long nanos) {
+            confirmLatencyTotal.add(nanos);
+            confirmLatencyMax.accumulateAndGet(nanos, Math::max);
+        }
+
+        void recordLag(long nanos) {
+            lagMax.accumulateAndGet(nanos, Math::max);
+        }
+
+        String report(long elapsedNanos) {
+            long sentCount = sent.sum();
+            long confirmedCount = confirmed.sum();
+            double seconds = elapsedNanos / 1e9;
+            return String.format("Enviadas: %d (%.1f msg/s) | Confirmadas: %d | Nacks: %d | Erros: %d | "
+                            + "Confirm médio: %.2f ms (máx. %.2f ms) | Atraso máx. do agendamento: %.2f ms",
+                    sentCount, sentCount / seconds, confirmedCount, nacked.sum(), errors.sum(),
+                    confirmedCount == 0 ? 0.0 : confirmLatencyTotal.sum() / 1e6 / confirmedCount,
+                    confirmLatencyMax.get() / 1e6, lagMax.get() / 1e6);
+        }
+    }
+
+    /**
+     * Contrapressão do gerador. O perfil de taxa corre em um relógio virtual que avança a
+     * {@code ritmo} × o tempo real, então a forma da carga se mantém, só mais lenta. A cada
+     * intervalo o ritmo cai pela metade (até 5%) se a fila mais cheia passou de maxDepth e não está
+     * esvaziando, ou se o confirm médio do intervalo passou de maxConfirmMs; fica parado enquanto a
+     * fila acima do limite esvazia e, fora isso, sobe 10 pontos até 100%. Enquanto o broker avisa
+     * {@code connection.blocked} (alarme de memória ou disco) o relógio para.
+     */
+    static class Backpressure {
+        private static final double MIN_PACE = 0.05;
+        private static final double PACE_STEP = 0.1;
+
+        private final long maxDepth;
+        private final double maxConfirmMs;
+        private final long pollNanos;
+        private final LongAdder confirmNanos = new LongAdder();
+        private final LongAdder confirmCount = new LongAdder();
+        private final LongAdder slowdowns = new LongAdder();
+        private volatile Segment segment;
+        private double pace = 1;
+        private String blockedReason;
+        private long lastDepth = -1;
+        private double lastConfirmMs = -1;
+
+        /** Trecho do relógio virtual com ritmo constante a partir de um instante real. */
+        private static final class Segment {
+            final long realStart;
+            final long virtualStart;
+            final double pace;
+
+            Segment(long realStart, long virtualStart, double pace) {
+                this.realStart = realStart;
+                this.virtualStart = virtualStart;
+                this.pace = pace;
+            }
+
+            long virtualAt(long now) {
+                return virtualStart + (long) ((now - realStart) * pace);
+            }
+        }
+
+        Backpressure(long start, long maxDepth, double maxConfirmMs, long pollNanos) {
+            this.maxDepth = maxDepth;
+            this.maxConfirmMs = maxConfirmMs;
+            this.pollNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(10), pollNanos);
+            this.segment = new Segment(start, 0, 1);
+        }
+
+        /**
+         * Espera o instante virtual {@code offsetNanos} do perfil. Devolve o atraso em tempo real
+         * com que a mensagem sai, ou -1 se ela só sairia depois de {@code deadline}.
+         */
+        long await(long offsetNanos, long deadline) throws InterruptedException {
+            while (true) {
+                long now = System.nanoTime();
+                Segment current = segment;
+                long ahead = offsetNanos - current.virtualAt(now);
+                if (ahead <= 0) {
+                    return current.pace > 0 ? (long) (-ahead / current.pace) : 0;
+                }
+                double wait = current.pace > 0 ? ahead / current.pace : Double.MAX_VALUE;
+                if (current.pace > 0 ? now + wait >= deadline : now >= deadline) return -1;
+                // acorda a cada intervalo para seguir mudanças de ritmo
+                LockSupport.parkNanos((long) Math.min(wait, pollNanos));
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        }
+
+        void recordConfirm(long nanos) {
+            confirmNanos.add(nanos);
+            confirmCount.increment();
+        }
+
+        /** Ajuste periódico a partir da profundidade da fila (-1 = desconhecida) e dos confirms do intervalo. */
+        synchronized void update(long depth, long now) {
+            long confirms = confirmCount.sumThenReset();
+            long totalNanos = confirmNanos.sumThenReset();
+            lastConfirmMs = confirms == 0 ? -1 : totalNanos / 1e6 / confirms;
+            boolean overDepth = maxDepth > 0 && depth > maxDepth;
+            boolean growing = overDepth && depth >= lastDepth;
+            boolean slowConfirms = maxConfirmMs > 0 && lastConfirmMs > maxConfirmMs;
+            if (depth >= 0) lastDepth = depth;
+
+            double next;
+            if (growing || slowConfirms) {
+                next = Math.max(MIN_PACE, pace / 2);
+                if (next < pace) slowdowns.increment();
+            } else if (overDepth) {
+                next = pace;
+            } else {
+                next = Math.min(1, pace + PACE_STEP);
+            }
+            if (next != pace) {
+                pace = next;
+                apply(now);
+            }
+        }
+
+        synchronized void blocked(String reason) {
+            blockedReason = reason;
+            apply(System.nanoTime());
+            System.err.println("Broker bloqueou a publicação: " + reason);
+        }
+
+        synchronized void unblocked() {
+            blockedReason = null;
+            pace = Math.max(MIN_PACE, pace / 2);
+            apply(System.nanoTime());
+            System.err.println("Broker liberou a publicação; retomando a " + Math.round(pace * 100) + "% do ritmo");
+        }
+
+        private void apply(long now) {
+            Segment current = segment;
+            segment = new Segment(now, current.virtualAt(now), blockedReason != null ? 0 : pace);
+        }
+
+        synchronized String report() {
+            return String.format("Contrapressão: ritmo %.0f%% | fila mais cheia: %s | confirm médio no intervalo: %s | reduções: %d%s",
+                    pace * 100, lastDepth < 0 ? "?" : String.valueOf(lastDepth),
+                    lastConfirmMs < 0 ? "-" : String.format("%.1f ms", lastConfirmMs), slowdowns.sum(),
+                    blockedReason != null ? " | BLOQUEADO pelo broker: " + blockedReason : "");
+        }
+    }
+
+    /**
+     * Payloads carregados uma vez na partida e guardados como modelos no heap. No binário o
+     * modelo é o próprio corpo e vai ao broker sem cópia; no JSON cada imagem já fica serializada
+     * com id e timestamp de largura fixa, e o envio copia o modelo uma vez e reescreve esses dois
+     * campos. Essa cópia não dá para evitar: basicPublish só aceita um byte[] inteiro, sem
+     * offset/tamanho, então um buffer reaproveitado por thread precisaria de um array por payload
+     * em cada thread. O total respeita maxBytes; as imagens que não cabem ficam de fora (rostos e
+     * futebol são carregados alternadamente).
+     */
+    static class PayloadCache {
+        static final AMQP.BasicProperties JSON_PROPS = new AMQP.BasicProperties.Builder()
+                .contentType(JSON_CONTENT_TYPE)
+                .deliveryMode(2)
+                .build();
+        private static final String ID_PLACEHOLDER = "00000000-0000-0000-0000-000000000000";
+        // Long.MAX_VALUE reserva 19 dígitos; o timestamp real é escrito no começo e o resto vira espaço
+        private static final long TIMESTAMP_PLACEHOLDER = Long.MAX_VALUE;
+
+        private final Map<String, List<Payload>> byType = new HashMap<>();
+        private final long maxBytes;
+        private long used;
+
+        private PayloadCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+            byType.put("face", new ArrayList<>());
+            byType.put("team", new ArrayList<>());
+        }
+
+        static PayloadCache load(List<Path> faces, List<Path> teams, ObjectMapper mapper, BlobStore blobs,
+                                 boolean json, long maxBytes) throws IOException {
+            PayloadCache cache = new PayloadCache(maxBytes);
+            boolean faceFull = false, teamFull = false;
+            for (int i = 0; i < Math.max(faces.size(), teams.size()) && !(faceFull && teamFull); i++) {
+                if (!faceFull && i < faces.size()) faceFull = !cache.add(faces.get(i), "face", mapper, blobs, json);
+                if (!teamFull && i < teams.size()) teamFull = !cache.add(teams.get(i), "team", mapper, blobs, json);
+            }
+            if (faceFull || teamFull) {
+                System.out.printf("⚠️ Limite de %d MB atingido; nem todas as imagens foram pré-carregadas%n", maxBytes >> 20);
+            }
+            return cache;
+        }
+
+        private boolean add(Path path, String type, ObjectMapper mapper, BlobStore blobs, boolean json)
+                throws IOException {
+            String fileName = path.toAbsolutePath().toString();
+            BlobStore.Blob blob = blobs != null ? blobs.put(path) : null;
+            byte[] image = blob == null ? Files.readAllBytes(path) : null;
+            int imageSize = blob == null ? image.length : blob.size;
+            byte[] body = image != null ? image : new byte[0];
+            int idOffset = -1, timestampOffset = -1;
+            if (json) {
+                MensagemImagem msg = new MensagemImagem();
+                msg.setId(ID_PLACEHOLDER);
+                msg.setType(type);
+                msg.setFileName(fileName);
+                msg.setTimestamp(TIMESTAMP_PLACEHOLDER);
+                msg.setImageData(image);
+                if (blob != null) {
+                    msg.setImageHash(blob.hash);
+                    msg.setImageSize(blob.size);
+                }
+                body = mapper.writeValueAsBytes(msg);
+                idOffset = indexOf(body, "\"id\":\"" + ID_PLACEHOLDER + "\"") + 6;
+                timestampOffset = indexOf(body, "\"timestamp\":" + TIMESTAMP_PLACEHOLDER) + 12;
+            }
+            if (used + body.length > maxBytes) return false;
+
+            long shardKey = blob != null ? Sharding.key(blob.hash) : Sharding.key(image);
+            byType.get(type).add(new Payload(fileName, imageSize, blob == null ? null : blob.hash, shardKey,
+                    body, idOffset, timestampOffset));
+            used += body.length;
+            return true;
+        }
+
+        private static int indexOf(byte[] data, String marker) {
+            byte[] m = marker.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            outer:
+            for (int i = 0; i <= data.length - m.length; i++) {
+                for (int j = 0; j < m.length; j++) {
+                    if (data[i + j] != m[j]) continue outer;
+                }
+                return i;
+            }
+            throw new IllegalStateException("Marcador não encontrado no JSON: " + marker);
+        }
+
+        int size(String type) {
+            return byType.get(type).size();
+        }
+
+        long bytesUsed() {
+            return used;
+        }
+
+        Payload pick(String type) {
+            List<Payload> list = byType.get(type);
+            return list.get(ThreadLocalRandom.current().nextInt(list.size()));
+        }
+
+        static class Payload {
+            final String fileName;
+            final int imageSize;
+            final String imageHash;
+            final long shardKey;
+            // nunca alterado depois da carga: no binário é publicado diretamente
+            private final byte[] template;
+            private final int idOffset;
+            private final int timestampOffset;
+
+            Payload(String fileName, int imageSize, String imageHash, long shardKey, byte[] template,
+                    int idOffset, int timestampOffset) {
+                this.fileName = fileName;
+                this.imageSize = imageSize;
+                this.imageHash = imageHash;
+                this.shardKey = shardKey;
+                this.template = template;
+                this.idOffset = idOffset;
+                this.timestampOffset = timestampOffset;
+            }
+
+            boolean isJson() {
+                return idOffset >= 0;
+            }
+
+            /**
+             * Corpo pronto para envio: no binário o próprio modelo (não pode ser alterado); no JSON
+             * uma cópia com id e timestamp aplicados.
+             */
+            byte[] body(String id, long timestamp) {
+                if (!isJson()) return template;
+                byte[] out = template.clone();
+                for (int i = 0; i < 36; i++) {
+                    out[idOffset + i] = (byte) id.charAt(i);
+                }
+                String ts = Long.toString(timestamp);
+                for (int i = 0; i < 19; i++) {
+                    out[timestampOffset + i] = i < ts.length() ? (byte) ts.charAt(i) : (byte) ' ';
+                }
+                return out;
+            }
+        }
+    }
+
+    /**
+     * Roteamento por conteúdo para {@code SHARDS} filas por tipo ({@code face_queue.0}, ...,
+     * ligadas às chaves {@code face.0}, ...). A mesma imagem cai sempre no mesmo shard, e o jump
+     * consistent hash (Lamping e Veach) move só 1/N das chaves quando o número de shards muda.
+     */
+    static final class Sharding {
+        static String queue(String baseQueue, int shard) {
+            return baseQueue + "." + shard;
+        }
+
+        static String routingKey(String type, int shard) {
+            return type + "." + shard;
+        }
+
+        /** Chave da imagem embutida: FNV-1a de 64 bits sobre os bytes. */
+        static long key(byte[] data) {
+            long h = 0xcbf29ce484222325L;
+            for (byte b : data) {
+                h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+            }
+            return mix(h);
+        }
+
+        /** Chave da imagem no claim-check: os primeiros 64 bits do SHA-256 já calculado. */
+        static long key(String sha256Hex) {
+            return mix(Long.parseUnsignedLong(sha256Hex.substring(0, 16), 16));
+        }
+
+        static int jump(long key, int buckets) {
+            long b = -1, j = 0;
+            while (j < buckets) {
+                b = j;
+                key = key * 2862933555777941757L + 1;
+                j = (long) ((b + 1) * ((double) (1L << 31) / ((key >>> 33) + 1)));
+            }
+            return (int) b;
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Armazém de imagens endereçado por conteúdo (claim-check): cada imagem distinta é gravada
+     * uma vez em {@code <raiz>/<2 primeiros hex>/<sha-256>} no volume compartilhado com os
+     * consumidores, e a mensagem leva só o hash e o tamanho.
+     */
+    static class BlobStore {
+        private final Path root;
+        private final Map<Path, Blob> written = new ConcurrentHashMap<>();
+
+        BlobStore(Path root) throws IOException {
+            this.root = Files.createDirectories(root);
+        }
+
+        Blob put(Path source) throws IOException {
+            try {
+                return written.computeIfAbsent(source, p -> {
+                    try {
+                        return write(Files.readAllBytes(p));
+                    } catch (IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
+                });
+            } catch (java.io.UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Blob write(byte[] data) throws IOException {
+            String hash = sha256(data);
+            Path target = path(root, hash);
+            if (!Files.exists(target) || Files.size(target) != data.length) {
+                Files.createDirectories(target.getParent());
+                // grava em arquivo temporário e move, para o consumidor nunca ver um blob pela metade
+                Path tmp = Files.createTempFile(target.getParent(), hash, ".tmp");
+                Files.write(tmp, data);
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return new Blob(hash, data.length);
+        }
+
+        static Path path(Path root, String hash) {
+            return root.resolve(hash.substring(0, 2)).resolve(hash);
+        }
+
+        private static String sha256(byte[] data) {
+            try {
+                byte[] digest = java.security.MessageDigest.getInstance("SHA-256").digest(data);
+                StringBuilder hex = new StringBuilder(digest.length * 2);
+                for (byte b : digest) {
+                    hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+                }
+                return hex.toString();
+            } catch (java.security.NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static class Blob {
+            final String hash;
+            final int size;
+
+            Blob(String hash, int size) {
+                this.hash = hash;
+                this.size = size;
+            }
+        }
+    }
+
+    /** Resultado publicado pelos consumidores; só o necessário para a latência fim a fim. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Resultado {
+        @JsonProperty("id") private String id;
+        @JsonProperty("tipo") private String type;
+        @JsonProperty("timestamp") private long timestamp;
+
+        public Resultado() {}
+        public String getId() { return id; }
+        public String getType() { return type; }
+        public long getTimestamp() { return timestamp; }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class MensagemImagem {
         @JsonProperty("id") private String id;
         @JsonProperty("tipo") private String type;
         @JsonProperty("nomeArquivo") private String fileName;
         @JsonProperty("timestamp") private long timestamp;
         @JsonProperty("dadosImagem") private byte[] imageData;
+        @JsonProperty("hashImagem") private String imageHash;
+        @JsonProperty("tamanhoImagem") private Integer imageSize;
 
         public MensagemImagem() {}
         public String getId() { return id; }
@@ -174,5 +1042,9 @@ class Main {
         public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
         public byte[] getImageData() { return imageData; }
         public void setImageData(byte[] imageData) { this.imageData = imageData; }
+        public String getImageHash() { return imageHash; }
+        public void setImageHash(String imageHash) { this.imageHash = imageHash; }
+        public Integer getImageSize() { return imageSize; }
+        public void setImageSize(Integer imageSize) { this.imageSize = imageSize; }
     }
 }
@@ -1,147 +1,311 @@
 package com.exemplo;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.rabbitmq.client.*;
+import com.exemplo.consumer.ImageConsumer;
+import com.exemplo.consumer.ImageDecoder;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.modelimport.keras.KerasModelImport;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
-import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.awt.image.DataBufferByte;
+import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicLong;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
-public class Main {
+public class Main extends ImageConsumer<Main.SentimentAnalyzer.Result> {
 
-    private static final String QUEUE_NAME = "face_queue";
+    private static final int ND4J_THREADS_PER_WORKER = Integer.parseInt(System.getenv().getOrDefault("ND4J_THREADS_PER_WORKER", "0"));
+    private static final String MODEL_FILE = "model.h5";
+    private static final String NATIVE_MODEL_FILE = System.getenv().getOrDefault("NATIVE_MODEL_FILE", "model.zip");
 
-    private Connection connection;
-    private Channel channel;
-    private ObjectMapper objectMapper;
-    private SentimentAnalyzer analyzer;
-    private AtomicLong messagesProcessed;
+    private final SentimentAnalyzer analyzer;
 
     public Main() {
-        this.objectMapper = new ObjectMapper();
-        this.analyzer = new SentimentAnalyzer();
-        this.messagesProcessed = new AtomicLong(0);
+        this(new SentimentAnalyzer());
     }
 
-    public void connectRabbitMQ() throws IOException, TimeoutException {
-        String host = System.getenv("RABBITMQ_HOST");
-        String user = System.getenv("RABBITMQ_USER");
-        String pass = System.getenv("RABBITMQ_PASS");
-
-        if (host == null || user == null || pass == null) {
-            throw new IllegalStateException("Variáveis de ambiente do RabbitMQ não definidas");
-        }
-
-        ConnectionFactory factory = new ConnectionFactory();
-        factory.setHost(host);
-        factory.setUsername(user);
-        factory.setPassword(pass);
-
-        connection = factory.newConnection();
-        channel = connection.createChannel();
-        channel.queueDeclare(QUEUE_NAME, true, false, false, null);
-        channel.basicQos(1);
-
-        System.out.println("Conectado ao RabbitMQ em " + host);
+    /** Com o analisador já montado; o harness de ponta a ponta passa um modelo sintético. */
+    public Main(SentimentAnalyzer analyzer) {
+        super("rosto", "face", 256, 256);
+        this.analyzer = analyzer;
     }
 
-    public void startConsuming() throws IOException {
-        DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-            try {
-                ImageMessage msg = objectMapper.readValue(delivery.getBody(), ImageMessage.class);
-                SentimentAnalyzer.Result result = analyzer.analyze(msg.getImageData());
-
-                long count = messagesProcessed.incrementAndGet();
-                System.out.printf("[%s] Sentimento: %s | Confiança: %.2f%% | Total processadas: %d\n",
-                        msg.getFileName(), result.getSentiment(), result.getConfidence() * 100, count);
-
-                channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+    /** O modelo do DL4J não pode ser compartilhado entre threads: cada worker além do primeiro ganha uma cópia. */
+    @Override
+    protected Replica<SentimentAnalyzer.Result> replica(int index) {
+        SentimentAnalyzer replica = index == 0 ? analyzer : analyzer.replicate();
+        return new Replica<SentimentAnalyzer.Result>() {
+            @Override
+            public List<SentimentAnalyzer.Result> infer(List<byte[]> pixels) {
+                return replica.analyzePreprocessed(pixels);
+            }
 
-            } catch (Exception e) {
-                System.err.println("Erro ao processar mensagem: " + e.getMessage());
-                e.printStackTrace();
+            @Override
+            public void warmUp(List<ByteBuffer> images) {
+                replica.analyzeBatch(images);
             }
         };
+    }
 
-        channel.basicConsume(QUEUE_NAME, false, deliverCallback, consumerTag -> {});
+    @Override
+    protected byte[] preprocess(ByteBuffer image) throws IOException {
+        return SentimentAnalyzer.preprocess(image);
     }
 
-    public void close() {
-        try { if (channel != null && channel.isOpen()) channel.close(); } catch (Exception ignored) {}
-        try { if (connection != null && connection.isOpen()) connection.close(); } catch (Exception ignored) {}
+    @Override
+    protected boolean cacheable(SentimentAnalyzer.Result result) {
+        return !"ERRO".equals(result.getSentiment());
     }
 
-    public static void main(String[] args) {
-        Main consumer = new Main();
-        Runtime.getRuntime().addShutdownHook(new Thread(consumer::close));
+    @Override
+    protected String label(SentimentAnalyzer.Result result) {
+        return result.getSentiment();
+    }
 
-        try {
-            consumer.connectRabbitMQ();
-            consumer.startConsuming();
+    @Override
+    protected double confidence(SentimentAnalyzer.Result result) {
+        return result.getConfidence();
+    }
 
-            while (true) {
-                Thread.sleep(1000);
-            }
+    @Override
+    protected String describe(SentimentAnalyzer.Result result) {
+        return String.format("Sentimento: %s | Confiança: %.2f%%", result.getSentiment(), result.getConfidence() * 100);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Grava o modelo no formato nativo (zip do ModelSerializer, sem o estado do updater) em um
+     * temporário no mesmo diretório e troca por rename atômico, para um boot concorrente nunca ler
+     * um arquivo pela metade. Falha ao gravar só gera aviso: o modelo importado segue em uso.
+     */
+    static void saveNativeModel(Model model, File target) {
+        Path tmp = null;
+        try {
+            tmp = target.toPath().resolveSibling(target.getName() + "." + ProcessHandle.current().pid() + ".tmp");
+            ModelSerializer.writeModel(model, tmp.toFile(), false);
+            Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Modelo salvo no formato nativo em " + target);
+        } catch (IOException e) {
+            System.err.println("Não foi possível salvar o modelo nativo em " + target + ": " + e.getMessage());
+            try { if (tmp != null) Files.deleteIfExists(tmp); } catch (IOException ignored) {}
         }
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class ImageMessage {
-        @JsonProperty("nomeArquivo") private String fileName;
-        @JsonProperty("dadosImagem") private byte[] imageData;
-
-        public String getFileName() { return fileName; }
-        public byte[] getImageData() { return imageData; }
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--export-model")) {
+            try {
+                SentimentAnalyzer.loadModel(true);
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
+        if (ND4J_THREADS_PER_WORKER > 0) {
+            Nd4j.getEnvironment().setMaxThreads(ND4J_THREADS_PER_WORKER);
+            Nd4j.getEnvironment().setMaxMasterThreads(ND4J_THREADS_PER_WORKER);
+        }
+        ImageConsumer.run(Main::new);
     }
 
     public static class SentimentAnalyzer {
+        private static final String[] CLASSES = {"feliz", "triste"};
+        private static final ThreadLocal<Preprocessor> PREPROCESSOR = ThreadLocal.withInitial(Preprocessor::new);
+
         private final MultiLayerNetwork model;
 
         public SentimentAnalyzer() {
             try {
-                model = KerasModelImport.importKerasSequentialModelAndWeights("model.h5");
-                System.out.println("Modelo Keras carregado com sucesso!");
+                model = loadModel(false);
             } catch (Exception e) {
                 throw new RuntimeException("Erro ao carregar modelo Keras", e);
             }
         }
 
+        /**
+         * Carrega o modelo do formato nativo do DL4J ({@code NATIVE_MODEL_FILE}) quando ele existe e
+         * não é mais antigo que o {@code model.h5}. Caso contrário importa o Keras (parse do HDF5 e
+         * conversão camada a camada, a parte lenta do boot) e grava o formato nativo para os
+         * próximos boots. {@code forceImport} ignora o arquivo nativo existente.
+         */
+        static MultiLayerNetwork loadModel(boolean forceImport) throws Exception {
+            File keras = new File(MODEL_FILE);
+            File cached = new File(NATIVE_MODEL_FILE);
+            long start = System.nanoTime();
+            if (!forceImport && cached.isFile() && cached.lastModified() >= keras.lastModified()) {
+                try {
+                    MultiLayerNetwork model = MultiLayerNetwork.load(cached, false);
+                    System.out.printf("Modelo carregado do formato nativo %s em %d ms%n",
+                            NATIVE_MODEL_FILE, (System.nanoTime() - start) / 1_000_000);
+                    return model;
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Modelo nativo ilegível (" + e.getMessage() + "), reimportando " + MODEL_FILE);
+                }
+            }
+            MultiLayerNetwork model = KerasModelImport.importKerasSequentialModelAndWeights(MODEL_FILE);
+            System.out.printf("Modelo importado do Keras em %d ms%n", (System.nanoTime() - start) / 1_000_000);
+            saveNativeModel(model, cached);
+            return model;
+        }
+
+        public SentimentAnalyzer(MultiLayerNetwork model) {
+            this.model = model;
+        }
+
+        /** Nova instância com uma cópia independente dos pesos, para uso em outra thread. */
+        public SentimentAnalyzer replicate() {
+            return new SentimentAnalyzer(model.clone());
+        }
+
         public Result analyze(byte[] imageBytes) {
-            try {
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(imageBytes));
-                BufferedImage resized = new BufferedImage(48, 48, BufferedImage.TYPE_BYTE_GRAY);
-                resized.getGraphics().drawImage(img, 0, 0, 48, 48, null);
-
-                INDArray input = Nd4j.create(1, 48, 48, 1);
-                for (int y = 0; y < 48; y++) {
-                    for (int x = 0; x < 48; x++) {
-                        double pixel = resized.getRaster().getSample(x, y, 0) / 255.0;
-                        input.putScalar(new int[]{0, y, x, 0}, pixel);
+            return analyzeBatch(Collections.singletonList(ByteBuffer.wrap(imageBytes))).get(0);
+        }
+
+        /** Classifica várias imagens com uma única chamada {@code model.output} sobre [N,48,48,1]. */
+        public List<Result> analyzeBatch(List<ByteBuffer> images) {
+            Result[] results = new Result[images.size()];
+            Preprocessor preprocessor = PREPROCESSOR.get();
+            int[] positions = new int[images.size()];
+            int count = 0;
+
+            for (int i = 0; i < images.size(); i++) {
+                try {
+                    long start = System.nanoTime();
+                    BufferedImage img = ImageDecoder.decode(images.get(i), Preprocessor.SIZE, Preprocessor.SIZE, true);
+                    IMAGE_READ_LATENCY.recordSince(start);
+                    preprocessor.put(img, count);
+                    positions[count++] = i;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    results[i] = new Result("ERRO", 0.0);
+                }
+            }
+
+            return infer(preprocessor, results, positions, count);
+        }
+
+        /**
+         * Estágio de decode do pipeline: lê a imagem já reduzida e a redimensiona para 48x48 em
+         * cinza, fora da thread do modelo. Devolve os pixels para {@link #analyzePreprocessed}.
+         */
+        public static byte[] preprocess(ByteBuffer image) throws IOException {
+            long start = System.nanoTime();
+            BufferedImage img = ImageDecoder.decode(image, Preprocessor.SIZE, Preprocessor.SIZE, true);
+            IMAGE_READ_LATENCY.recordSince(start);
+            return PREPROCESSOR.get().resize(img).clone();
+        }
+
+        /** Classifica imagens vindas de {@link #preprocess}; entradas null (decode falhou) viram "ERRO". */
+        public List<Result> analyzePreprocessed(List<byte[]> images) {
+            Result[] results = new Result[images.size()];
+            Preprocessor preprocessor = PREPROCESSOR.get();
+            int[] positions = new int[images.size()];
+            int count = 0;
+
+            for (int i = 0; i < images.size(); i++) {
+                if (images.get(i) == null) {
+                    results[i] = new Result("ERRO", 0.0);
+                } else {
+                    preprocessor.putPixels(images.get(i), count);
+                    positions[count++] = i;
+                }
+            }
+            return infer(preprocessor, results, positions, count);
+        }
+
+        private List<Result> infer(Preprocessor preprocessor, Result[] results, int[] positions, int count) {
+            if (count > 0) {
+                try {
+                    INDArray input = preprocessor.toINDArray(count);
+                    long start = System.nanoTime();
+                    INDArray output = model.output(input);
+                    INFERENCE_LATENCY.recordSince(start);
+                    INDArray predicted = Nd4j.argMax(output, 1);
+                    for (int n = 0; n < count; n++) {
+                        int predictedClass = predicted.getInt(n);
+                        results[positions[n]] = new Result(CLASSES[predictedClass], output.getDouble(n, predictedClass));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    for (int n = 0; n < count; n++) {
+                        results[positions[n]] = new Result("ERRO", 0.0);
                     }
                 }
+            }
+
+            return Arrays.asList(results);
+        }
 
-                INDArray output = model.output(input);
-                int predictedClass = Nd4j.argMax(output, 1).getInt(0);
-                String[] classes = {"feliz", "triste"};
-                String predictedLabel = classes[predictedClass];
-                double confidence = output.getDouble(0, predictedClass);
+        /**
+         * Redimensiona para 48x48 em tons de cinza e normaliza direto do {@code byte[]} do raster
+         * para um {@code float[]} reaproveitado, copiado em bloco para o INDArray de entrada.
+         * Uma instância por thread: em regime, nada é alocado por imagem.
+         */
+        static class Preprocessor {
+            static final int SIZE = 48;
+            private static final int PIXELS = SIZE * SIZE;
+
+            private final BufferedImage scratch = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+            private final byte[] pixels = ((DataBufferByte) scratch.getRaster().getDataBuffer()).getData();
+            private final Graphics2D graphics = scratch.createGraphics();
+            private float[] values = new float[PIXELS];
+            // entradas reaproveitadas, indexadas pelo tamanho do lote
+            private INDArray[] inputs = new INDArray[1];
+            // tempo de normalização acumulado no lote atual, somado à cópia em toINDArray
+            private long fillNanos;
+
+            void put(BufferedImage img, int n) {
+                putPixels(resize(img), n);
+            }
 
-                return new Result(predictedLabel, confidence);
-            } catch (Exception e) {
-                e.printStackTrace();
-                return new Result("ERRO", 0.0);
+            /** Redimensiona para o raster reaproveitado e devolve os pixels (válidos até a próxima chamada). */
+            byte[] resize(BufferedImage img) {
+                long start = System.nanoTime();
+                graphics.setColor(Color.BLACK);
+                graphics.fillRect(0, 0, SIZE, SIZE);
+                graphics.drawImage(img, 0, 0, SIZE, SIZE, null);
+                RESIZE_LATENCY.recordSince(start);
+                return pixels;
+            }
+
+            /** Normaliza os pixels 48x48 na posição n do lote. */
+            void putPixels(byte[] src, int n) {
+                long start = System.nanoTime();
+                int offset = n * PIXELS;
+                if (values.length < offset + PIXELS) {
+                    values = Arrays.copyOf(values, Math.max(values.length * 2, offset + PIXELS));
+                }
+                for (int i = 0; i < PIXELS; i++) {
+                    values[offset + i] = (src[i] & 0xFF) / 255f;
+                }
+                fillNanos += System.nanoTime() - start;
+            }
+
+            INDArray toINDArray(int count) {
+                long start = System.nanoTime();
+                if (inputs.length <= count) {
+                    inputs = Arrays.copyOf(inputs, count + 1);
+                }
+                INDArray input = inputs[count];
+                if (input == null) {
+                    input = Nd4j.create(DataType.FLOAT, count, SIZE, SIZE, 1);
+                    inputs[count] = input;
+                }
+                input.data().asNioFloat().put(values, 0, count * PIXELS);
+                TENSOR_LATENCY.record(fillNanos + System.nanoTime() - start);
+                fillNanos = 0;
+                return input;
             }
         }
 